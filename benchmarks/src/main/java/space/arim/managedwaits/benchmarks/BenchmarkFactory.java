@@ -0,0 +1,52 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits.benchmarks;
+
+import space.arim.managedwaits.DeadlockFreeFutureFactory;
+import space.arim.managedwaits.ManagedWaitStrategy;
+import space.arim.managedwaits.TaskQueue;
+
+/**
+ * Factory whose primary thread is assigned by the benchmark state which drives it
+ *
+ */
+final class BenchmarkFactory extends DeadlockFreeFutureFactory {
+
+	private volatile Thread primaryThread;
+
+	BenchmarkFactory(TaskQueue taskQueue, ManagedWaitStrategy waitStrategy, boolean signalAwaitedFuturesOnly) {
+		super(taskQueue, waitStrategy, signalAwaitedFuturesOnly);
+	}
+
+	void setPrimaryThread(Thread primaryThread) {
+		this.primaryThread = primaryThread;
+	}
+
+	@Override
+	public boolean isPrimaryThread() {
+		return Thread.currentThread() == primaryThread;
+	}
+
+	@Override
+	public Thread getPrimaryThread() {
+		return primaryThread;
+	}
+
+}
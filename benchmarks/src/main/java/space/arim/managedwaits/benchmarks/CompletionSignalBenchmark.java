@@ -0,0 +1,111 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import space.arim.omnibus.util.concurrent.CentralisedFuture;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of completing futures, which includes any completion signalling
+ * required by the wait strategy. Compares the case where no thread is waiting with the
+ * case where the primary thread is inside a managed wait.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompletionSignalBenchmark {
+
+	private static final Object VALUE = new Object();
+
+	/**
+	 * State in which no primary thread is known, and therefore no managed wait occurs
+	 *
+	 */
+	@State(Scope.Benchmark)
+	public static class IdleFactoryState {
+
+		@Param
+		public WaitStrategyType waitStrategy;
+
+		@Param
+		public TaskQueueType taskQueue;
+
+		@Param({"false", "true"})
+		public boolean signalAwaitedFuturesOnly;
+
+		BenchmarkFactory factory;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			factory = new BenchmarkFactory(taskQueue.create(), waitStrategy.create(), signalAwaitedFuturesOnly);
+		}
+	}
+
+	private static Object complete(BenchmarkFactory factory) {
+		CentralisedFuture<Object> future = factory.newIncompleteFuture();
+		future.complete(VALUE);
+		return future;
+	}
+
+	private static Object completeWithDependent(BenchmarkFactory factory) {
+		CentralisedFuture<Object> future = factory.newIncompleteFuture();
+		CompletableFuture<?> dependent = future.thenApply((value) -> value);
+		future.complete(VALUE);
+		return dependent;
+	}
+
+	@Benchmark
+	public Object completeWithoutWaiter(IdleFactoryState state) {
+		return complete(state.factory);
+	}
+
+	@Benchmark
+	public Object completeWhileWaiting(PrimaryThreadState state) {
+		return complete(state.factory);
+	}
+
+	@Benchmark
+	public Object completeWithDependentWithoutWaiter(IdleFactoryState state) {
+		return completeWithDependent(state.factory);
+	}
+
+	@Benchmark
+	public Object completeWithDependentWhileWaiting(PrimaryThreadState state) {
+		return completeWithDependent(state.factory);
+	}
+
+}
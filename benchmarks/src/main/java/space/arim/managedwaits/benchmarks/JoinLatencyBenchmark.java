@@ -0,0 +1,129 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import space.arim.omnibus.util.concurrent.CentralisedFuture;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of {@code join()} on the primary thread, where the benchmark thread
+ * is itself the primary thread and therefore undertakes a managed wait.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JoinLatencyBenchmark {
+
+	private static final Object VALUE = new Object();
+	private static final Runnable NOOP = () -> {};
+
+	@Param
+	public WaitStrategyType waitStrategy;
+
+	@Param
+	public TaskQueueType taskQueue;
+
+	@Param({"false", "true"})
+	public boolean signalAwaitedFuturesOnly;
+
+	private BenchmarkFactory factory;
+	private ExecutorService completer;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		factory = new BenchmarkFactory(taskQueue.create(), waitStrategy.create(), signalAwaitedFuturesOnly);
+		// Thread-scoped state is set up by the benchmark thread itself
+		factory.setPrimaryThread(Thread.currentThread());
+		completer = Executors.newSingleThreadExecutor((runnable) -> {
+			Thread thread = new Thread(runnable, "benchmark-completer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		completer.shutdown();
+		if (!completer.awaitTermination(10L, TimeUnit.SECONDS)) {
+			throw new IllegalStateException("Completer did not terminate");
+		}
+	}
+
+	/**
+	 * Joins a future completed by another thread
+	 *
+	 * @return the result
+	 */
+	@Benchmark
+	public Object joinCompletedAsync() {
+		CentralisedFuture<Object> future = factory.newIncompleteFuture();
+		completer.execute(() -> future.complete(VALUE));
+		return future.join();
+	}
+
+	/**
+	 * Joins a sync continuation of a future completed by another thread. The continuation
+	 * must be run by the primary thread from within its managed wait.
+	 *
+	 * @return the result
+	 */
+	@Benchmark
+	public Object joinSyncContinuation() {
+		CentralisedFuture<Object> future = factory.newIncompleteFuture();
+		CentralisedFuture<?> continuation = future.thenRunSync(NOOP);
+		completer.execute(() -> future.complete(VALUE));
+		return continuation.join();
+	}
+
+	/**
+	 * Joins a future which is already complete, measuring the fast path
+	 *
+	 * @return the result
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public Object joinAlreadyCompleted() {
+		CentralisedFuture<Object> future = factory.newIncompleteFuture();
+		future.complete(VALUE);
+		return future.join();
+	}
+
+}
@@ -0,0 +1,84 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import space.arim.omnibus.util.concurrent.CentralisedFuture;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared state providing a dedicated primary thread. The primary thread spends its
+ * entire life inside a managed wait, so that it runs queued tasks exactly as a main
+ * thread blocked on a future would.
+ *
+ */
+@State(Scope.Benchmark)
+public class PrimaryThreadState {
+
+	@Param
+	public WaitStrategyType waitStrategy;
+
+	@Param
+	public TaskQueueType taskQueue;
+
+	@Param({"false", "true"})
+	public boolean signalAwaitedFuturesOnly;
+
+	BenchmarkFactory factory;
+
+	private CentralisedFuture<?> shutdownFuture;
+	private Thread primaryThread;
+
+	@Setup(Level.Trial)
+	public void startPrimaryThread() throws InterruptedException {
+		factory = new BenchmarkFactory(taskQueue.create(), waitStrategy.create(), signalAwaitedFuturesOnly);
+		shutdownFuture = factory.newIncompleteFuture();
+
+		CountDownLatch started = new CountDownLatch(1);
+		primaryThread = new Thread(() -> {
+			factory.setPrimaryThread(Thread.currentThread());
+			started.countDown();
+			shutdownFuture.join();
+		}, "benchmark-primary-thread");
+		primaryThread.setDaemon(true);
+		primaryThread.start();
+		if (!started.await(10L, TimeUnit.SECONDS)) {
+			throw new IllegalStateException("Primary thread did not start");
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void stopPrimaryThread() throws InterruptedException {
+		// Completing from another thread wakes strategies relying on completion signals
+		shutdownFuture.complete(null);
+		primaryThread.join(TimeUnit.SECONDS.toMillis(10L));
+		if (primaryThread.isAlive()) {
+			throw new IllegalStateException("Primary thread did not exit its managed wait");
+		}
+	}
+
+}
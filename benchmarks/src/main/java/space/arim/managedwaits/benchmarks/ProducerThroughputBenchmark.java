@@ -0,0 +1,119 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of sync tasks submitted by several producer threads at once. <br>
+ * <br>
+ * Each invocation submits a batch of tasks and then awaits the last one, which keeps
+ * the queue bounded regardless of how quickly the primary thread drains it. The batched
+ * variants submit the same batch through a single call to {@code executeSyncAll}.
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OperationsPerInvocation(ProducerThroughputBenchmark.BATCH_SIZE)
+public class ProducerThroughputBenchmark {
+
+	static final int BATCH_SIZE = 64;
+	private static final Runnable NOOP = () -> {};
+	private static final List<Runnable> NOOP_BATCH = Collections.nCopies(BATCH_SIZE - 1, NOOP);
+
+	private static Object submitBatch(PrimaryThreadState state) {
+		BenchmarkFactory factory = state.factory;
+		for (int n = 1; n < BATCH_SIZE; n++) {
+			factory.executeSync(NOOP);
+		}
+		// Tasks run in submission order, so the batch is done once the last task is
+		return factory.runSync(NOOP).join();
+	}
+
+	private static Object submitBatchAtOnce(PrimaryThreadState state) {
+		BenchmarkFactory factory = state.factory;
+		factory.executeSyncAll(NOOP_BATCH);
+		return factory.runSync(NOOP).join();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Object producers1(PrimaryThreadState state) {
+		return submitBatch(state);
+	}
+
+	@Benchmark
+	@Threads(2)
+	public Object producers2(PrimaryThreadState state) {
+		return submitBatch(state);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Object producers4(PrimaryThreadState state) {
+		return submitBatch(state);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public Object producers8(PrimaryThreadState state) {
+		return submitBatch(state);
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public Object producersMax(PrimaryThreadState state) {
+		return submitBatch(state);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Object batchedProducers1(PrimaryThreadState state) {
+		return submitBatchAtOnce(state);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Object batchedProducers4(PrimaryThreadState state) {
+		return submitBatchAtOnce(state);
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public Object batchedProducersMax(PrimaryThreadState state) {
+		return submitBatchAtOnce(state);
+	}
+
+}
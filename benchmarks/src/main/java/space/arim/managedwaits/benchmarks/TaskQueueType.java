@@ -0,0 +1,52 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits.benchmarks;
+
+import space.arim.managedwaits.PriorityTaskQueue;
+import space.arim.managedwaits.RingBufferTaskQueue;
+import space.arim.managedwaits.SimpleTaskQueue;
+import space.arim.managedwaits.StripedTaskQueue;
+import space.arim.managedwaits.TaskQueue;
+
+import java.util.function.Supplier;
+
+/**
+ * The task queues under benchmark
+ *
+ */
+public enum TaskQueueType {
+	SIMPLE(SimpleTaskQueue::new),
+	RING_BUFFER(RingBufferTaskQueue::new),
+	PRIORITY(PriorityTaskQueue::new),
+	STRIPED(StripedTaskQueue::new),
+	STRIPED_GLOBAL(() -> new StripedTaskQueue(
+			Runtime.getRuntime().availableProcessors(), StripedTaskQueue.Ordering.GLOBAL));
+
+	private final Supplier<TaskQueue> creator;
+
+	TaskQueueType(Supplier<TaskQueue> creator) {
+		this.creator = creator;
+	}
+
+	TaskQueue create() {
+		return creator.get();
+	}
+
+}
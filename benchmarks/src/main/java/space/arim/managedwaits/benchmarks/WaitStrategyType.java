@@ -0,0 +1,52 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits.benchmarks;
+
+import space.arim.managedwaits.BackoffManagedWaitStrategy;
+import space.arim.managedwaits.BlockingManagedWaitStrategy;
+import space.arim.managedwaits.LightSleepManagedWaitStrategy;
+import space.arim.managedwaits.ManagedWaitStrategy;
+import space.arim.managedwaits.TargetedUnparkManagedWaitStrategy;
+
+import java.util.function.Supplier;
+
+/**
+ * The wait strategies under benchmark. New strategies should be added here,
+ * whereupon every benchmark will measure them.
+ *
+ */
+public enum WaitStrategyType {
+	LIGHT_SLEEP(LightSleepManagedWaitStrategy::new),
+	BLOCKING(BlockingManagedWaitStrategy::new),
+	BLOCKING_TRACK_WAITERS(() -> new BlockingManagedWaitStrategy(true)),
+	BACKOFF(BackoffManagedWaitStrategy::new),
+	TARGETED_UNPARK(TargetedUnparkManagedWaitStrategy::new);
+
+	private final Supplier<ManagedWaitStrategy> creator;
+
+	WaitStrategyType(Supplier<ManagedWaitStrategy> creator) {
+		this.creator = creator;
+	}
+
+	ManagedWaitStrategy create() {
+		return creator.get();
+	}
+
+}
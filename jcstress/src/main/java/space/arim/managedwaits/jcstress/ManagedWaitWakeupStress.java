@@ -0,0 +1,177 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits.jcstress;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Mode;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.Signal;
+import org.openjdk.jcstress.annotations.State;
+import space.arim.managedwaits.BlockingManagedWaitStrategy;
+import space.arim.managedwaits.ManagedWaitStrategy;
+import space.arim.managedwaits.TargetedUnparkManagedWaitStrategy;
+import space.arim.omnibus.util.concurrent.CentralisedFuture;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+/**
+ * Checks that a managed wait on the primary thread wakes up, using the wait strategies which
+ * park until signalled. The actor claims the primary thread and awaits a future. The signal
+ * completes the future, either directly, through a sync task which must be drained by the
+ * managed wait, or through the source of a dependent stage being awaited. <br>
+ * <br>
+ * The actor never terminates if a signal is lost.
+ *
+ */
+public abstract class ManagedWaitWakeupStress {
+
+	private final StressFactory factory;
+	private final CentralisedFuture<Object> future;
+	private final Future<?> awaited;
+	private final Completion completion;
+
+	ManagedWaitWakeupStress(ManagedWaitStrategy waitStrategy, boolean signalAwaitedFuturesOnly, Completion completion) {
+		factory = new StressFactory(waitStrategy, signalAwaitedFuturesOnly);
+		future = factory.newIncompleteFuture();
+		awaited = (completion == Completion.DEPENDENT_STAGE) ? future.thenApply((value) -> value) : future;
+		this.completion = completion;
+	}
+
+	enum Completion {
+		/** The future is completed by another thread */
+		DIRECT,
+		/** The future is completed by a sync task, which the managed wait must run */
+		SYNC_TASK,
+		/** The awaited future is a dependent stage of the future completed by another thread */
+		DEPENDENT_STAGE
+	}
+
+	@Actor
+	public void primaryThread() {
+		factory.claimPrimaryThread();
+		try {
+			awaited.get();
+		} catch (InterruptedException ex) {
+			// Interrupted by the harness because the wait is stale
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException ex) {
+			throw new AssertionError(ex);
+		}
+	}
+
+	@Signal
+	public void complete() {
+		if (completion == Completion.SYNC_TASK) {
+			factory.executeSync(() -> future.complete(this));
+		} else {
+			future.complete(this);
+		}
+	}
+
+	@JCStressTest(Mode.Termination)
+	@Description("TargetedUnparkManagedWaitStrategy wakes on future completion")
+	@Outcome(id = "TERMINATED", expect = ACCEPTABLE, desc = "Woke up")
+	@Outcome(id = "STALE", expect = FORBIDDEN, desc = "Lost wakeup")
+	@State
+	public static class TargetedUnparkDirect extends ManagedWaitWakeupStress {
+
+		public TargetedUnparkDirect() {
+			super(new TargetedUnparkManagedWaitStrategy(), false, Completion.DIRECT);
+		}
+	}
+
+	@JCStressTest(Mode.Termination)
+	@Description("TargetedUnparkManagedWaitStrategy, signalling awaited futures only, wakes on future completion")
+	@Outcome(id = "TERMINATED", expect = ACCEPTABLE, desc = "Woke up")
+	@Outcome(id = "STALE", expect = FORBIDDEN, desc = "Lost wakeup")
+	@State
+	public static class TargetedUnparkAwaitedOnly extends ManagedWaitWakeupStress {
+
+		public TargetedUnparkAwaitedOnly() {
+			super(new TargetedUnparkManagedWaitStrategy(), true, Completion.DIRECT);
+		}
+	}
+
+	@JCStressTest(Mode.Termination)
+	@Description("TargetedUnparkManagedWaitStrategy wakes when a task is added")
+	@Outcome(id = "TERMINATED", expect = ACCEPTABLE, desc = "Woke up")
+	@Outcome(id = "STALE", expect = FORBIDDEN, desc = "Lost wakeup")
+	@State
+	public static class TargetedUnparkSyncTask extends ManagedWaitWakeupStress {
+
+		public TargetedUnparkSyncTask() {
+			super(new TargetedUnparkManagedWaitStrategy(), false, Completion.SYNC_TASK);
+		}
+	}
+
+	@JCStressTest(Mode.Termination)
+	@Description("TargetedUnparkManagedWaitStrategy wakes on completion of a dependent stage")
+	@Outcome(id = "TERMINATED", expect = ACCEPTABLE, desc = "Woke up")
+	@Outcome(id = "STALE", expect = FORBIDDEN, desc = "Lost wakeup")
+	@State
+	public static class TargetedUnparkDependentStage extends ManagedWaitWakeupStress {
+
+		public TargetedUnparkDependentStage() {
+			super(new TargetedUnparkManagedWaitStrategy(), false, Completion.DEPENDENT_STAGE);
+		}
+	}
+
+	@JCStressTest(Mode.Termination)
+	@Description("BlockingManagedWaitStrategy wakes on future completion")
+	@Outcome(id = "TERMINATED", expect = ACCEPTABLE, desc = "Woke up")
+	@Outcome(id = "STALE", expect = FORBIDDEN, desc = "Lost wakeup")
+	@State
+	public static class BlockingDirect extends ManagedWaitWakeupStress {
+
+		public BlockingDirect() {
+			super(new BlockingManagedWaitStrategy(), false, Completion.DIRECT);
+		}
+	}
+
+	@JCStressTest(Mode.Termination)
+	@Description("BlockingManagedWaitStrategy wakes when a task is added")
+	@Outcome(id = "TERMINATED", expect = ACCEPTABLE, desc = "Woke up")
+	@Outcome(id = "STALE", expect = FORBIDDEN, desc = "Lost wakeup")
+	@State
+	public static class BlockingSyncTask extends ManagedWaitWakeupStress {
+
+		public BlockingSyncTask() {
+			super(new BlockingManagedWaitStrategy(), false, Completion.SYNC_TASK);
+		}
+	}
+
+	@JCStressTest(Mode.Termination)
+	@Description("BlockingManagedWaitStrategy wakes on completion of a dependent stage")
+	@Outcome(id = "TERMINATED", expect = ACCEPTABLE, desc = "Woke up")
+	@Outcome(id = "STALE", expect = FORBIDDEN, desc = "Lost wakeup")
+	@State
+	public static class BlockingDependentStage extends ManagedWaitWakeupStress {
+
+		public BlockingDependentStage() {
+			super(new BlockingManagedWaitStrategy(), false, Completion.DEPENDENT_STAGE);
+		}
+	}
+}
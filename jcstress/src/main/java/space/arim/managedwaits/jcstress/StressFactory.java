@@ -0,0 +1,56 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits.jcstress;
+
+import space.arim.managedwaits.DeadlockFreeFutureFactory;
+import space.arim.managedwaits.ManagedWaitStrategy;
+import space.arim.managedwaits.SimpleTaskQueue;
+
+/**
+ * Factory whose primary thread is the actor which claims it
+ *
+ */
+final class StressFactory extends DeadlockFreeFutureFactory {
+
+	private volatile Thread primaryThread;
+
+	StressFactory(ManagedWaitStrategy waitStrategy, boolean signalAwaitedFuturesOnly) {
+		super(new SimpleTaskQueue(), waitStrategy, signalAwaitedFuturesOnly);
+	}
+
+	/**
+	 * Makes the current thread the primary thread
+	 *
+	 */
+	void claimPrimaryThread() {
+		primaryThread = Thread.currentThread();
+	}
+
+	@Override
+	public boolean isPrimaryThread() {
+		return Thread.currentThread() == primaryThread;
+	}
+
+	@Override
+	public Thread getPrimaryThread() {
+		return primaryThread;
+	}
+
+}
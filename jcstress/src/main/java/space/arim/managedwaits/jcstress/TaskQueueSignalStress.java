@@ -0,0 +1,186 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits.jcstress;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.III_Result;
+import space.arim.managedwaits.PriorityTaskQueue;
+import space.arim.managedwaits.RingBufferTaskQueue;
+import space.arim.managedwaits.SimpleTaskQueue;
+import space.arim.managedwaits.StripedTaskQueue;
+import space.arim.managedwaits.TaskQueue;
+
+import java.util.List;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+/**
+ * Races a producer adding a task against the primary thread draining the queue. Either the
+ * drain runs the task, or the producer finds the queue empty and signals the primary thread.
+ * Afterward, the arbiter drains the queue again, so every task must have run exactly once. <br>
+ * <br>
+ * Before the race, an earlier task has claimed the empty queue transition, as though the
+ * primary thread was signalled but has not yet drained. <br>
+ * <br>
+ * Results: whether the drain ran the task, whether the producer signalled, and the total
+ * number of runs.
+ *
+ */
+public abstract class TaskQueueSignalStress {
+
+	private final TaskQueue taskQueue;
+	private final int batchSize;
+	/** Written by tasks, which run on the primary thread actor and then the arbiter */
+	private int runs;
+
+	TaskQueueSignalStress(TaskQueue taskQueue, int batchSize) {
+		this.taskQueue = taskQueue;
+		this.batchSize = batchSize;
+		taskQueue.addTask(() -> {});
+		taskQueue.addedToEmptyQueue();
+	}
+
+	@Actor
+	public void producer(III_Result result) {
+		Runnable task = () -> runs++;
+		if (batchSize == 1) {
+			taskQueue.addTask(task);
+		} else {
+			taskQueue.addTasks(List.of(task, task));
+		}
+		result.r2 = taskQueue.addedToEmptyQueue() ? 1 : 0;
+	}
+
+	@Actor
+	public void primaryThread(III_Result result) {
+		taskQueue.pollAndRunAll();
+		result.r1 = (runs == batchSize) ? 1 : 0;
+	}
+
+	@Arbiter
+	public void arbiter(III_Result result) {
+		taskQueue.pollAndRunAll();
+		result.r3 = runs;
+	}
+
+	@JCStressTest
+	@Description("SimpleTaskQueue: lost signals and lost or repeated tasks")
+	@Outcome(id = {"1, 0, 1", "1, 1, 1"}, expect = ACCEPTABLE, desc = "The drain ran the task")
+	@Outcome(id = "0, 1, 1", expect = ACCEPTABLE, desc = "The drain missed the task, which signalled")
+	@Outcome(id = "0, 0, 1", expect = FORBIDDEN, desc = "Lost wakeup")
+	@Outcome(expect = FORBIDDEN, desc = "Task lost or run more than once")
+	@State
+	public static class Simple extends TaskQueueSignalStress {
+
+		public Simple() {
+			super(new SimpleTaskQueue(), 1);
+		}
+	}
+
+	@JCStressTest
+	@Description("PriorityTaskQueue: lost signals and lost or repeated tasks")
+	@Outcome(id = {"1, 0, 1", "1, 1, 1"}, expect = ACCEPTABLE, desc = "The drain ran the task")
+	@Outcome(id = "0, 1, 1", expect = ACCEPTABLE, desc = "The drain missed the task, which signalled")
+	@Outcome(id = "0, 0, 1", expect = FORBIDDEN, desc = "Lost wakeup")
+	@Outcome(expect = FORBIDDEN, desc = "Task lost or run more than once")
+	@State
+	public static class Priority extends TaskQueueSignalStress {
+
+		public Priority() {
+			super(new PriorityTaskQueue(), 1);
+		}
+	}
+
+	@JCStressTest
+	@Description("RingBufferTaskQueue: lost signals and lost or repeated tasks")
+	@Outcome(id = {"1, 0, 1", "1, 1, 1"}, expect = ACCEPTABLE, desc = "The drain ran the task")
+	@Outcome(id = "0, 1, 1", expect = ACCEPTABLE, desc = "The drain missed the task, which signalled")
+	@Outcome(id = "0, 0, 1", expect = FORBIDDEN, desc = "Lost wakeup")
+	@Outcome(expect = FORBIDDEN, desc = "Task lost or run more than once")
+	@State
+	public static class RingBuffer extends TaskQueueSignalStress {
+
+		public RingBuffer() {
+			super(new RingBufferTaskQueue(), 1);
+		}
+	}
+
+	@JCStressTest
+	@Description("RingBufferTaskQueue batches: lost signals and lost or repeated tasks")
+	@Outcome(id = {"1, 0, 2", "1, 1, 2"}, expect = ACCEPTABLE, desc = "The drain ran the whole batch")
+	@Outcome(id = "0, 1, 2", expect = ACCEPTABLE, desc = "The drain missed some of the batch, which signalled")
+	@Outcome(id = "0, 0, 2", expect = FORBIDDEN, desc = "Lost wakeup")
+	@Outcome(expect = FORBIDDEN, desc = "Task lost or run more than once")
+	@State
+	public static class RingBufferBatch extends TaskQueueSignalStress {
+
+		public RingBufferBatch() {
+			super(new RingBufferTaskQueue(), 2);
+		}
+	}
+
+	@JCStressTest
+	@Description("SimpleTaskQueue batches: lost signals and lost or repeated tasks")
+	@Outcome(id = {"1, 0, 2", "1, 1, 2"}, expect = ACCEPTABLE, desc = "The drain ran the whole batch")
+	@Outcome(id = "0, 1, 2", expect = ACCEPTABLE, desc = "The drain missed some of the batch, which signalled")
+	@Outcome(id = "0, 0, 2", expect = FORBIDDEN, desc = "Lost wakeup")
+	@Outcome(expect = FORBIDDEN, desc = "Task lost or run more than once")
+	@State
+	public static class SimpleBatch extends TaskQueueSignalStress {
+
+		public SimpleBatch() {
+			super(new SimpleTaskQueue(), 2);
+		}
+	}
+
+	@JCStressTest
+	@Description("StripedTaskQueue: lost signals and lost or repeated tasks")
+	@Outcome(id = {"1, 0, 1", "1, 1, 1"}, expect = ACCEPTABLE, desc = "The drain ran the task")
+	@Outcome(id = "0, 1, 1", expect = ACCEPTABLE, desc = "The drain missed the task, which signalled")
+	@Outcome(id = "0, 0, 1", expect = FORBIDDEN, desc = "Lost wakeup")
+	@Outcome(expect = FORBIDDEN, desc = "Task lost or run more than once")
+	@State
+	public static class Striped extends TaskQueueSignalStress {
+
+		public Striped() {
+			super(new StripedTaskQueue(), 1);
+		}
+	}
+
+	@JCStressTest
+	@Description("StripedTaskQueue batches: lost signals and lost or repeated tasks")
+	@Outcome(id = {"1, 0, 2", "1, 1, 2"}, expect = ACCEPTABLE, desc = "The drain ran the whole batch")
+	@Outcome(id = "0, 1, 2", expect = ACCEPTABLE, desc = "The drain missed some of the batch, which signalled")
+	@Outcome(id = "0, 0, 2", expect = FORBIDDEN, desc = "Lost wakeup")
+	@Outcome(expect = FORBIDDEN, desc = "Task lost or run more than once")
+	@State
+	public static class StripedBatch extends TaskQueueSignalStress {
+
+		public StripedBatch() {
+			super(new StripedTaskQueue(1, StripedTaskQueue.Ordering.GLOBAL), 2);
+		}
+	}
+}
@@ -3,4 +3,5 @@ module space.arim.managedwaits {
 	exports space.arim.managedwaits;
 
 	requires transitive space.arim.omnibus;
-}
\ No newline at end of file
+	requires jdk.jfr;
+}
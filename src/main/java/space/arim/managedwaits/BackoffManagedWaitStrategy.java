@@ -0,0 +1,231 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import space.arim.omnibus.util.concurrent.CentralisedFuture;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+import static space.arim.managedwaits.Reporting.*;
+
+/**
+ * Implementation of {@code ManagedWaitStrategy} which backs off progressively while waiting.
+ * First it busy-spins using {@link Thread#onSpinWait()}, then it yields, then it parks for
+ * growing amounts of time up to a maximum. <br>
+ * <br>
+ * The backoff is reset whenever tasks are added to the queue, since such tasks are then run
+ * by the waiting thread. Thus a primary thread which is actively running tasks stays in the
+ * cheap spin phase. <br>
+ * <br>
+ * This wait strategy is best suited when waits typically complete within a few microseconds.
+ * The spin phase avoids the latency of parking, while the park phase limits the CPU cost
+ * of longer waits.
+ */
+public final class BackoffManagedWaitStrategy implements ManagedWaitStrategy {
+
+	private final int spinIterations;
+	private final int spinAndYieldIterations;
+	private final long minParkTime;
+	private final long maxParkTime;
+
+	private volatile boolean tasksAdded;
+
+	/**
+	 * Creates using the specified backoff parameters
+	 *
+	 * @param spinIterations the number of iterations to spin before yielding
+	 * @param yieldIterations the number of iterations to yield before parking
+	 * @param minParkTime the initial park time, in nanoseconds
+	 * @param maxParkTime the park time which, through doubling, will not be exceeded, in nanoseconds
+	 * @throws IllegalArgumentException if the iteration counts are negative, if either park time is
+	 * not positive, or if the minimum park time is greater than the maximum park time
+	 */
+	public BackoffManagedWaitStrategy(int spinIterations, int yieldIterations, long minParkTime, long maxParkTime) {
+		if (spinIterations < 0 || yieldIterations < 0) {
+			throw new IllegalArgumentException("iteration counts must be non-negative");
+		}
+		if (minParkTime <= 0 || maxParkTime <= 0) {
+			throw new IllegalArgumentException("park times must be positive");
+		}
+		if (minParkTime > maxParkTime) {
+			throw new IllegalArgumentException("minimum park time must not exceed maximum park time");
+		}
+		this.spinIterations = spinIterations;
+		this.spinAndYieldIterations = (int) Math.min((long) spinIterations + yieldIterations, Integer.MAX_VALUE);
+		this.minParkTime = minParkTime;
+		this.maxParkTime = maxParkTime;
+	}
+
+	/**
+	 * Creates using the default backoff parameters. These are 100 spins, then 10 yields,
+	 * then parking which starts at 1 microsecond and grows to 100 microseconds.
+	 *
+	 */
+	public BackoffManagedWaitStrategy() {
+		this(100, 10, 1_000L, 100_000L);
+	}
+
+	@Override
+	public boolean requireSignalWhenFutureCompleted() {
+		return false;
+	}
+
+	@Override
+	public void signalWhenFutureCompleted(Thread mainThread) {
+	}
+
+	@Override
+	public void signalWhenTaskAdded(Thread mainThread) {
+		/*
+		 * As with LightSleepManagedWaitStrategy, the main thread is not unparked.
+		 * Reading before writing avoids contending on the field when the flag is
+		 * already set, which it is during bursts.
+		 */
+		if (!tasksAdded) {
+			tasksAdded = true;
+		}
+	}
+
+	/**
+	 * Clears the tasks added flag. Must be called before running queued tasks, so that
+	 * tasks added afterward will be noticed at the next iteration.
+	 *
+	 * @return true if tasks were added since the last call
+	 */
+	private boolean clearTasksAdded() {
+		if (tasksAdded) {
+			tasksAdded = false;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Idles once according to the current backoff phase
+	 *
+	 * @param idleIterations the number of iterations since the backoff was last reset
+	 * @param parkTime the current park time, used if in the park phase
+	 * @param parkLimit the maximum time to park, in nanoseconds
+	 * @return the park time for the next iteration
+	 */
+	private long idle(int idleIterations, long parkTime, long parkLimit) {
+		if (idleIterations < spinIterations) {
+			Thread.onSpinWait();
+			return parkTime;
+		}
+		if (idleIterations < spinAndYieldIterations) {
+			Thread.yield();
+			return parkTime;
+		}
+		LockSupport.parkNanos(this, Math.min(parkTime, parkLimit));
+		return (parkTime >= maxParkTime >> 1) ? maxParkTime : parkTime << 1;
+	}
+
+	@Override
+	public <T> T await(Runnable runQueuedTasks, CentralisedFuture<T> future) {
+		int idleIterations = 0;
+		long parkTime = minParkTime;
+		for (;;) {
+			boolean ranTasks = clearTasksAdded();
+			runQueuedTasks.run();
+
+			T result;
+			if ((result = reportJoin(future)) != ABSENT_VALUE) {	// if (isDone()) {
+				return result;										// return super.join(); }
+			}
+			if (ranTasks) {
+				idleIterations = 0;
+				parkTime = minParkTime;
+			}
+			parkTime = idle(idleIterations, parkTime, TimedTaskRunner.parkLimit(runQueuedTasks));
+			if (idleIterations < spinAndYieldIterations) {
+				idleIterations++;
+			}
+		}
+	}
+
+	@Override
+	public <T> T awaitInterruptibly(Runnable runQueuedTasks, CentralisedFuture<T> future)
+			throws InterruptedException, ExecutionException {
+		int idleIterations = 0;
+		long parkTime = minParkTime;
+		for (;;) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			boolean ranTasks = clearTasksAdded();
+			runQueuedTasks.run();
+
+			T result;
+			if ((result = reportGet(future)) != ABSENT_VALUE) {	// if (isDone()) {
+				return result;									// return super.get(); }
+			}
+			if (ranTasks) {
+				idleIterations = 0;
+				parkTime = minParkTime;
+			}
+			parkTime = idle(idleIterations, parkTime, TimedTaskRunner.parkLimit(runQueuedTasks));
+			if (idleIterations < spinAndYieldIterations) {
+				idleIterations++;
+			}
+		}
+	}
+
+	@Override
+	public <T> T awaitUntil(Runnable runQueuedTasks, CentralisedFuture<T> future, long timeout, TimeUnit unit)
+			throws InterruptedException, TimeoutException, ExecutionException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		int idleIterations = 0;
+		long parkTime = minParkTime;
+		for (;;) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			boolean ranTasks = clearTasksAdded();
+			runQueuedTasks.run();
+
+			T result;
+			if ((result = reportGet(future)) != ABSENT_VALUE) {	// if (isDone()) {
+				return result;									// return super.get(); }
+			}
+			long delay = deadline - System.nanoTime();
+			if (delay <= 0) {
+				throw new TimeoutException();
+			}
+			if (ranTasks) {
+				idleIterations = 0;
+				parkTime = minParkTime;
+			}
+			parkTime = idle(idleIterations, parkTime, Math.min(delay, TimedTaskRunner.parkLimit(runQueuedTasks)));
+			if (idleIterations < spinAndYieldIterations) {
+				idleIterations++;
+			}
+		}
+	}
+
+	/*
+	 * JDK-8074773 - lost unparks due to classloading of LockSupport - does not apply here,
+	 * because we do not rely on unparks
+	 */
+
+}
@@ -35,13 +35,49 @@ import static space.arim.managedwaits.Reporting.*;
  * May incur overhead due to locking and internal creation of futures. <br>
  * <br>
  * There are few cases where this strategy is optimal. It is most useful
- * when the main thread is blocked for longer periods of time.
+ * when the main thread is blocked for longer periods of time. <br>
+ * <br>
+ * If waiters are tracked, signalling avoids the lock entirely when no managed wait is in
+ * progress, at the cost of slightly more work when entering and leaving managed waits.
+ * This is advantageous when futures are frequently completed and tasks frequently added
+ * while the main thread is not waiting.
  */
 public final class BlockingManagedWaitStrategy implements ManagedWaitStrategy {
 
+	private final boolean trackWaiters;
+
 	private final ReentrantLock completionLock = new ReentrantLock();
 	private final Condition completionCondition = completionLock.newCondition();
 
+	/**
+	 * The number of managed waits in progress. Only written while holding the lock,
+	 * and only used if waiters are tracked.
+	 */
+	private volatile int waiters;
+	/**
+	 * Whether a signal was received since queued tasks were last run. Only set while
+	 * holding the lock.
+	 */
+	private volatile boolean signalled;
+
+	/**
+	 * Creates an instance which optionally tracks waiters
+	 *
+	 * @param trackWaiters whether to track waiters, so that signalling is a mere volatile read
+	 * when no managed wait is in progress
+	 */
+	public BlockingManagedWaitStrategy(boolean trackWaiters) {
+		this.trackWaiters = trackWaiters;
+	}
+
+	/**
+	 * Creates an instance which does not track waiters
+	 *
+	 */
+	public BlockingManagedWaitStrategy() {
+		this(false);
+	}
+
 	@Override
 	public boolean requireSignalWhenFutureCompleted() {
 		return true;
@@ -58,55 +94,126 @@ public final class BlockingManagedWaitStrategy implements ManagedWaitStrategy {
 	}
 
 	private void signal() {
+		/*
+		 * The waiter publishes itself before running tasks and checking for completion,
+		 * and the signaller adds tasks or completes futures before reading waiters.
+		 * Both sides being volatile, at least one of them observes the other.
+		 */
+		if (trackWaiters && waiters == 0) {
+			return;
+		}
 		completionLock.lock();
 		try {
+			signalled = true;
 			completionCondition.signal();
 		} finally {
 			completionLock.unlock();
 		}
 	}
 
-	@Override
-	public <T> T await(Runnable runQueuedTasks, CentralisedFuture<T> future) {
-		for (;;) {
-			runQueuedTasks.run();
+	private void beginWait() {
+		if (trackWaiters) {
+			completionLock.lock();
+			try {
+				waiters++;
+			} finally {
+				completionLock.unlock();
+			}
+		}
+	}
 
+	private void endWait() {
+		if (trackWaiters) {
 			completionLock.lock();
 			try {
-				T result;
-				if ((result = reportJoin(future)) != ABSENT_VALUE) {	// if (isDone()) {
-					return result;										// return super.join(); }
-				}
-				completionCondition.awaitUninterruptibly();
+				waiters--;
 			} finally {
 				completionLock.unlock();
 			}
 		}
 	}
 
+	/*
+	 * The signalled flag is cleared before running queued tasks, and checked while holding
+	 * the lock before awaiting. Therefore, a signal sent after running queued tasks but before
+	 * awaiting the condition is not lost.
+	 */
+
+	@Override
+	public <T> T await(Runnable runQueuedTasks, CentralisedFuture<T> future) {
+		beginWait();
+		boolean interrupted = false;
+		try {
+			for (;;) {
+				signalled = false;
+				runQueuedTasks.run();
+
+				completionLock.lock();
+				try {
+					T result;
+					if ((result = reportJoin(future)) != ABSENT_VALUE) {	// if (isDone()) {
+						return result;										// return super.join(); }
+					}
+					if (!signalled) {
+						long parkLimit = TimedTaskRunner.parkLimit(runQueuedTasks);
+						if (parkLimit == Long.MAX_VALUE) {
+							completionCondition.awaitUninterruptibly();
+						} else {
+							try {
+								completionCondition.awaitNanos(parkLimit);
+							} catch (InterruptedException ex) {
+								interrupted = true;
+							}
+						}
+					}
+				} finally {
+					completionLock.unlock();
+				}
+			}
+		} finally {
+			endWait();
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
 	@Override
 	public <T> T awaitInterruptibly(Runnable runQueuedTasks, CentralisedFuture<T> future)
 			throws InterruptedException, ExecutionException {
-		for (;;) {
-			if (Thread.interrupted()) {
-				throw new InterruptedException();
-			}
-			runQueuedTasks.run();
+		beginWait();
+		try {
+			for (;;) {
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+				signalled = false;
+				runQueuedTasks.run();
 
-			completionLock.lockInterruptibly();
-			try {
+				completionLock.lockInterruptibly();
+				try {
+					T result;
+					if ((result = reportGet(future)) != ABSENT_VALUE) {	// if (isDone()) {
+						return result;									// return super.get(); }
+					}
+					if (!signalled) {
+						long parkLimit = TimedTaskRunner.parkLimit(runQueuedTasks);
+						if (parkLimit == Long.MAX_VALUE) {
+							completionCondition.await();
+						} else {
+							completionCondition.awaitNanos(parkLimit);
+						}
+					}
+				} finally {
+					completionLock.unlock();
+				}
 				T result;
 				if ((result = reportGet(future)) != ABSENT_VALUE) {	// if (isDone()) {
 					return result;									// return super.get(); }
 				}
-				completionCondition.await();
-			} finally {
-				completionLock.unlock();
-			}
-			T result;
-			if ((result = reportGet(future)) != ABSENT_VALUE) {	// if (isDone()) {
-				return result;									// return super.get(); }
 			}
+		} finally {
+			endWait();
 		}
 	}
 
@@ -114,30 +221,38 @@ public final class BlockingManagedWaitStrategy implements ManagedWaitStrategy {
 	public <T> T awaitUntil(Runnable runQueuedTasks, CentralisedFuture<T> future, long timeout, TimeUnit unit)
 			throws InterruptedException, TimeoutException, ExecutionException {
 		long deadline = System.nanoTime() + unit.toNanos(timeout);
-		for (;;) {
-			if (Thread.interrupted()) {
-				throw new InterruptedException();
-			}
-			runQueuedTasks.run();
+		beginWait();
+		try {
+			for (;;) {
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+				signalled = false;
+				runQueuedTasks.run();
 
-			completionLock.lockInterruptibly();
-			try {
+				completionLock.lockInterruptibly();
+				try {
+					T result;
+					if ((result = reportGet(future)) != ABSENT_VALUE) {	// if (isDone()) {
+						return result;									// return super.get(); }
+					}
+					long waitFor = deadline - System.nanoTime();
+					if (waitFor <= 0) {
+						throw new TimeoutException();
+					}
+					if (!signalled) {
+						completionCondition.awaitNanos(Math.min(waitFor, TimedTaskRunner.parkLimit(runQueuedTasks)));
+					}
+				} finally {
+					completionLock.unlock();
+				}
 				T result;
 				if ((result = reportGet(future)) != ABSENT_VALUE) {	// if (isDone()) {
 					return result;									// return super.get(); }
 				}
-				long waitFor = deadline - System.nanoTime();
-				if (waitFor <= 0) {
-					throw new TimeoutException();
-				}
-				completionCondition.awaitNanos(waitFor);
-			} finally {
-				completionLock.unlock();
-			}
-			T result;
-			if ((result = reportGet(future)) != ABSENT_VALUE) {	// if (isDone()) {
-				return result;									// return super.get(); }
 			}
+		} finally {
+			endWait();
 		}
 	}
 
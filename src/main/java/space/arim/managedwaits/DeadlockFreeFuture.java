@@ -23,9 +23,13 @@ package space.arim.managedwaits;
 import space.arim.omnibus.util.concurrent.CentralisedFuture;
 import space.arim.omnibus.util.concurrent.impl.BaseCentralisedFuture;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 import static space.arim.managedwaits.Reporting.ABSENT_VALUE;
 import static space.arim.managedwaits.Reporting.reportGet;
@@ -35,79 +39,223 @@ class DeadlockFreeFuture<T> extends BaseCentralisedFuture<T> {
 
 	private final DeadlockFreeFutureFactory factory;
 	
-	private boolean dontSignalChildFuture;
-	
 	/**
-	 * Creates without signalling completion
-	 * 
-	 * @param factory the deadlock free future factory
-	 * @param sig parameter used to distinguish signature 
+	 * Whether this future was created as a dependent stage, or otherwise may be completed
+	 * internally by {@code CompletableFuture} without passing through the completion methods
+	 * overridden here. Such futures do not signal on completion unless registered.
+	 */
+	private final boolean dependent;
+	/** The factory last registered to be signalled upon completion */
+	private volatile DeadlockFreeFutureFactory signalRegistered;
+	/**
+	 * Whether the factory need not be signalled upon completion, because its primary thread
+	 * awaits this future only through a barrier which signals instead. Written by the primary
+	 * thread only
 	 */
-	private DeadlockFreeFuture(DeadlockFreeFutureFactory factory, @SuppressWarnings("unused") Void sig) {
+	private volatile boolean signalDeferred;
+	
+	private static final VarHandle SIGNAL_REGISTERED;
+	
+	static {
+		try {
+			SIGNAL_REGISTERED = MethodHandles.lookup().findVarHandle(
+					DeadlockFreeFuture.class, "signalRegistered", DeadlockFreeFutureFactory.class);
+		} catch (NoSuchFieldException | IllegalAccessException ex) {
+			throw new ExceptionInInitializerError(ex);
+		}
+	}
+	
+	private DeadlockFreeFuture(DeadlockFreeFutureFactory factory, boolean dependent) {
 		super(factory.trustedSyncExecutor);
 		this.factory = factory;
+		this.dependent = dependent;
 	}
 	
 	DeadlockFreeFuture(DeadlockFreeFutureFactory factory) {
-		this(factory, null);
-		if (factory.requireSignalWhenFutureCompleted()) {
-			whenCompleteSignal();
-		}
+		this(factory, false);
 	}
 	
 	/*
 	 * Completion signalling
+	 *
+	 * Futures which are completed explicitly signal through the overridden completion
+	 * methods, which costs neither a dependent stage nor any locking. Dependent stages are
+	 * completed internally, so they are instead registered when awaited.
 	 */
 	
 	@Override
 	public <U> CentralisedFuture<U> newIncompleteFuture() {
-		DeadlockFreeFuture<U> childFuture = new DeadlockFreeFuture<>(factory, null);
-
-		if (factory.requireSignalWhenFutureCompleted()) {
-			synchronized (this) {
-				if (!dontSignalChildFuture) {
-					childFuture.whenCompleteSignal();
-				}
+		return new DeadlockFreeFuture<>(factory, true);
+	}
+	
+	/**
+	 * Whether this future is a dependent stage, which must be registered using
+	 * {@link #whenCompleteSignal(DeadlockFreeFutureFactory)} in order to signal its completion
+	 *
+	 * @return true if a dependent stage
+	 */
+	boolean isDependentStage() {
+		return dependent;
+	}
+	
+	/**
+	 * Whether this future was created by the given factory
+	 *
+	 * @param factory the factory
+	 * @return true if created by the factory
+	 */
+	boolean isCreatedBy(DeadlockFreeFutureFactory factory) {
+		return this.factory == factory;
+	}
+	
+	/**
+	 * Signals the given factory when this future is completed. Used for awaited futures, if
+	 * the awaiting factory signals awaited futures only, if the future is a dependent stage,
+	 * or if the future was created by another factory. <br>
+	 * <br>
+	 * Registering the same factory again is a no-op, so that repeatedly awaiting the same
+	 * future, such as by polling with timed waits, does not pile up dependents. Only the
+	 * last registered factory is remembered.
+	 *
+	 * @param waitingFactory the factory undertaking the managed wait
+	 */
+	void whenCompleteSignal(DeadlockFreeFutureFactory waitingFactory) {
+		DeadlockFreeFutureFactory registered;
+		do {
+			registered = signalRegistered;
+			if (registered == waitingFactory) {
+				return;
+			}
+		} while (!SIGNAL_REGISTERED.compareAndSet(this, registered, waitingFactory));
+		super.whenComplete((ignore1, ignore2) -> {
+			if (waitingFactory != factory || !signalDeferred) {
+				waitingFactory.signalFutureCompleted();
 			}
+		});
+	}
+	
+	/**
+	 * Defers signalling the factory upon completion, until {@link #restoreSignal()}. Called on
+	 * the primary thread when awaiting this future through a barrier
+	 *
+	 */
+	void deferSignal() {
+		signalDeferred = true;
+	}
+	
+	/**
+	 * Restores signalling the factory upon completion. Called on the primary thread before
+	 * awaiting this future and checking for its completion
+	 *
+	 */
+	void restoreSignal() {
+		if (signalDeferred) {
+			signalDeferred = false;
 		}
-		return childFuture;
 	}
 	
-	private synchronized void whenCompleteSignal() {
-		dontSignalChildFuture = true;
-		super.whenComplete((ignore1, ignore2) -> factory.signalFutureCompleted());
-		dontSignalChildFuture = false;
+	/*
+	 * The completion methods queue the sync dependents they fire as a single task where
+	 * possible, see DeadlockFreeFutureFactory#beginDependentBatch
+	 */
+	
+	private boolean signalIfCompleted(boolean completed) {
+		if (completed && factory.requireSignalWhenFutureCompleted() && !signalDeferred) {
+			factory.signalFutureCompleted();
+		}
+		return completed;
+	}
+	
+	@Override
+	public boolean complete(T value) {
+		DeadlockFreeFutureFactory.DependentBatch batch = factory.beginDependentBatch();
+		boolean completed;
+		try {
+			completed = super.complete(value);
+		} finally {
+			factory.endDependentBatch(batch);
+		}
+		return signalIfCompleted(completed);
+	}
+	
+	@Override
+	public boolean completeExceptionally(Throwable ex) {
+		DeadlockFreeFutureFactory.DependentBatch batch = factory.beginDependentBatch();
+		boolean completed;
+		try {
+			completed = super.completeExceptionally(ex);
+		} finally {
+			factory.endDependentBatch(batch);
+		}
+		return signalIfCompleted(completed);
+	}
+	
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		DeadlockFreeFutureFactory.DependentBatch batch = factory.beginDependentBatch();
+		boolean completed;
+		try {
+			completed = super.cancel(mayInterruptIfRunning);
+		} finally {
+			factory.endDependentBatch(batch);
+		}
+		return signalIfCompleted(completed);
+	}
+	
+	@Override
+	public void obtrudeValue(T value) {
+		super.obtrudeValue(value);
+		signalIfCompleted(true);
+	}
+	
+	@Override
+	public void obtrudeException(Throwable ex) {
+		super.obtrudeException(ex);
+		signalIfCompleted(true);
+	}
+	
+	@Override
+	public CentralisedFuture<T> completeAsync(Supplier<? extends T> supplier, Executor executor) {
+		// Completed internally, bypassing the overridden completion methods
+		if (factory.requireSignalWhenFutureCompleted()) {
+			whenCompleteSignal(factory);
+		}
+		super.completeAsync(supplier, executor);
+		return this;
 	}
 	
 	// Managed waits
 	
 	@Override
 	public T join() {
-		if (!factory.isPrimaryThread()) {
+		DeadlockFreeFutureFactory waitingFactory = factory.waitingFactory();
+		if (waitingFactory == null) {
 			return super.join();
 		}
 		T result;
 		if ((result = reportJoin(this)) != ABSENT_VALUE) {		// if (isDone()) {
 			return result;										// return super.join(); }
 		}
-		return factory.await(this);
+		return waitingFactory.await(this);
 	}
 	
 	@Override
 	public T get() throws InterruptedException, ExecutionException {
-		if (!factory.isPrimaryThread()) {
+		DeadlockFreeFutureFactory waitingFactory = factory.waitingFactory();
+		if (waitingFactory == null) {
 			return super.get();
 		}
 		T result;
 		if ((result = reportGet(this)) != ABSENT_VALUE) {	// if (isDone()) {
 			return result;									// return super.get(); }
 		}
-		return factory.awaitInterruptibly(this);
+		return waitingFactory.awaitInterruptibly(this);
 	}
 
 	@Override
 	public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-		if (!factory.isPrimaryThread()) {
+		DeadlockFreeFutureFactory waitingFactory = factory.waitingFactory();
+		if (waitingFactory == null) {
 			return super.get(timeout, unit);
 		}
 		T result;
@@ -117,7 +265,23 @@ class DeadlockFreeFuture<T> extends BaseCentralisedFuture<T> {
 		if (timeout <= 0L) {
 			throw new TimeoutException();
 		}
-		return factory.awaitUntil(this, timeout, unit);
+		return waitingFactory.awaitUntil(this, timeout, unit);
+	}
+
+	/*
+	 * Plain blocking waits, used beyond the nesting limit of managed waits
+	 */
+
+	T joinWithoutManagedWait() {
+		return super.join();
+	}
+
+	T getWithoutManagedWait() throws InterruptedException, ExecutionException {
+		return super.get();
+	}
+
+	T getWithoutManagedWait(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		return super.get(timeout, unit);
 	}
 
 }
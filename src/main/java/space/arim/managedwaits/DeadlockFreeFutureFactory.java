@@ -24,15 +24,29 @@ import space.arim.omnibus.util.concurrent.FactoryOfTheFuture;
 import space.arim.omnibus.util.concurrent.SynchronousExecutor;
 import space.arim.omnibus.util.concurrent.impl.AbstractFactoryOfTheFuture;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 /**
  * Abstract {@link FactoryOfTheFuture} implementation suitable for applications which
  * indeed have a main thread, and which undertake managed waits when awaiting completion
- * of a future while on the main thread.
+ * of a future while on the main thread. <br>
+ * <br>
+ * The primary thread may be a virtual thread. No monitors are held on the paths taken by
+ * the primary thread, so it does not pin its carrier. For such a primary thread, see
+ * {@link VirtualThreadAwareManagedWaitStrategy}.
  *
  * @author A248
  */
@@ -40,20 +54,149 @@ public abstract class DeadlockFreeFutureFactory extends AbstractFactoryOfTheFutu
 
 	private final TaskQueue taskQueue;
 	private final ManagedWaitStrategy waitStrategy;
+	private final boolean signalEveryFuture;
+	private final boolean signalAwaitedFutures;
+	private final DrainBounds waitDrainBounds;
+	private final ManagedWaitMetrics metrics;
+	private final boolean measured;
+	/** Tasks run, counted only for measured tasks. Accessed on the primary thread only */
+	private int tasksRun;
+	private final NestingLimit nestingLimit;
+	/** Managed waits in progress. Accessed on the primary thread only */
+	private int waitDepth;
 
-	private final Runnable runQueuedTasks = new PeriodicSyncUnleasher();
+	private final TimedTaskRunner runQueuedTasks;
+	private final TimingWheel syncTimers = new TimingWheel();
 	final SynchronousExecutor trustedSyncExecutor = new TrustedSyncExecutor();
+	/** Sync dependents collected during the current thread's completion pass, if any */
+	private static final ThreadLocal<DependentBatch> dependentBatch = new ThreadLocal<>();
+	private final Executor[] prioritySyncExecutors = createPrioritySyncExecutors();
+	/** The stall watch of the primary thread, if watched by a {@link StallWatchdog} */
+	private volatile StallWatchdog.Watch stallWatch;
+
+	private static final VarHandle STALL_WATCH;
+
+	static {
+		try {
+			STALL_WATCH = MethodHandles.lookup().findVarHandle(
+					DeadlockFreeFutureFactory.class, "stallWatch", StallWatchdog.Watch.class);
+		} catch (NoSuchFieldException | IllegalAccessException ex) {
+			throw new ExceptionInInitializerError(ex);
+		}
+	}
 
 	/**
-	 * Creates an instance
+	 * Creates an instance. <br>
+	 * <br>
+	 * If the wait strategy requires signalling when futures are completed, it may either
+	 * be signalled when any future is completed, or only when a future being awaited on the
+	 * primary thread is completed. The latter avoids signalling costs for the many futures
+	 * which are never awaited on the primary thread, but requires registering a completion
+	 * callback upon each managed wait. When signalling any future, futures completed explicitly
+	 * signal from their completion methods, whereas dependent stages, which are completed
+	 * internally, are registered when awaited. <br>
+	 * <br>
+	 * Each time queued tasks are run during a managed wait, the task queue is drained within
+	 * the given drain bounds. Bounding the drain lets the wait end promptly once the awaited
+	 * future completes, rather than after every queued task has run. Tasks left over are run
+	 * by subsequent drains. <br>
+	 * <br>
+	 * Unless the metrics are {@link ManagedWaitMetrics#noop()}, the factory reports tasks added
+	 * through it, the running of those tasks, managed waits, and drains of the task queue which
+	 * the factory runs itself, see {@link ManagedWaitMetrics#recordDrain(long, int)}. Measuring
+	 * costs a small allocation per task and per managed wait. <br>
+	 * <br>
+	 * The nesting limit caps the depth of managed waits started by sync tasks run during
+	 * other managed waits. See {@link NestingLimit}.
 	 *
 	 * @param taskQueue the task queue
 	 * @param waitStrategy the wait strategy
-	 * @throws NullPointerException if either parameter is null
+	 * @param signalAwaitedFuturesOnly whether to signal completion of awaited futures only
+	 * @param waitDrainBounds the bounds on draining the task queue during managed waits
+	 * @param metrics the metrics to report to
+	 * @param nestingLimit the limit on nesting of managed waits
+	 * @throws NullPointerException if any object parameter is null
 	 */
-	protected DeadlockFreeFutureFactory(TaskQueue taskQueue, ManagedWaitStrategy waitStrategy) {
+	protected DeadlockFreeFutureFactory(TaskQueue taskQueue, ManagedWaitStrategy waitStrategy,
+										boolean signalAwaitedFuturesOnly, DrainBounds waitDrainBounds,
+										ManagedWaitMetrics metrics, NestingLimit nestingLimit) {
 		this.taskQueue = Objects.requireNonNull(taskQueue);
 		this.waitStrategy = Objects.requireNonNull(waitStrategy);
+		boolean requireSignal = waitStrategy.requireSignalWhenFutureCompleted();
+		signalEveryFuture = requireSignal && !signalAwaitedFuturesOnly;
+		signalAwaitedFutures = requireSignal && signalAwaitedFuturesOnly;
+		this.waitDrainBounds = Objects.requireNonNull(waitDrainBounds);
+		runQueuedTasks = (waitDrainBounds.isUnbounded()) ? new PeriodicSyncUnleasher() : new BoundedSyncUnleasher();
+		this.metrics = Objects.requireNonNull(metrics);
+		measured = metrics != ManagedWaitMetrics.noop();
+		this.nestingLimit = Objects.requireNonNull(nestingLimit);
+	}
+
+	/**
+	 * Creates an instance which does not limit nesting of managed waits.
+	 * See {@link #DeadlockFreeFutureFactory(TaskQueue, ManagedWaitStrategy, boolean, DrainBounds, ManagedWaitMetrics, NestingLimit)}
+	 *
+	 * @param taskQueue the task queue
+	 * @param waitStrategy the wait strategy
+	 * @param signalAwaitedFuturesOnly whether to signal completion of awaited futures only
+	 * @param waitDrainBounds the bounds on draining the task queue during managed waits
+	 * @param metrics the metrics to report to
+	 * @throws NullPointerException if any object parameter is null
+	 */
+	protected DeadlockFreeFutureFactory(TaskQueue taskQueue, ManagedWaitStrategy waitStrategy,
+										boolean signalAwaitedFuturesOnly, DrainBounds waitDrainBounds,
+										ManagedWaitMetrics metrics) {
+		this(taskQueue, waitStrategy, signalAwaitedFuturesOnly, waitDrainBounds, metrics, NestingLimit.unbounded());
+	}
+
+	/**
+	 * Creates an instance which does not report metrics.
+	 * See {@link #DeadlockFreeFutureFactory(TaskQueue, ManagedWaitStrategy, boolean, DrainBounds, ManagedWaitMetrics, NestingLimit)}
+	 *
+	 * @param taskQueue the task queue
+	 * @param waitStrategy the wait strategy
+	 * @param signalAwaitedFuturesOnly whether to signal completion of awaited futures only
+	 * @param waitDrainBounds the bounds on draining the task queue during managed waits
+	 * @throws NullPointerException if any object parameter is null
+	 */
+	protected DeadlockFreeFutureFactory(TaskQueue taskQueue, ManagedWaitStrategy waitStrategy,
+										boolean signalAwaitedFuturesOnly, DrainBounds waitDrainBounds) {
+		this(taskQueue, waitStrategy, signalAwaitedFuturesOnly, waitDrainBounds, ManagedWaitMetrics.noop());
+	}
+
+	/**
+	 * Creates an instance which drains the task queue without bounds during managed waits.
+	 * See {@link #DeadlockFreeFutureFactory(TaskQueue, ManagedWaitStrategy, boolean, DrainBounds, ManagedWaitMetrics, NestingLimit)}
+	 *
+	 * @param taskQueue the task queue
+	 * @param waitStrategy the wait strategy
+	 * @param signalAwaitedFuturesOnly whether to signal completion of awaited futures only
+	 * @throws NullPointerException if either parameter is null
+	 */
+	protected DeadlockFreeFutureFactory(TaskQueue taskQueue, ManagedWaitStrategy waitStrategy,
+										boolean signalAwaitedFuturesOnly) {
+		this(taskQueue, waitStrategy, signalAwaitedFuturesOnly, DrainBounds.unbounded());
+	}
+
+	/**
+	 * Creates an instance which, if required by the wait strategy, signals the completion
+	 * of every future
+	 *
+	 * @param taskQueue the task queue
+	 * @param waitStrategy the wait strategy
+	 * @throws NullPointerException if either parameter is null
+	 */
+	protected DeadlockFreeFutureFactory(TaskQueue taskQueue, ManagedWaitStrategy waitStrategy) {
+		this(taskQueue, waitStrategy, false);
+	}
+
+	private Executor[] createPrioritySyncExecutors() {
+		TaskPriority[] priorities = TaskPriority.values();
+		Executor[] executors = new Executor[priorities.length];
+		for (TaskPriority priority : priorities) {
+			executors[priority.ordinal()] = (command) -> executeSync(command, priority);
+		}
+		return executors;
 	}
 
 	@Override
@@ -80,30 +223,377 @@ public abstract class DeadlockFreeFutureFactory extends AbstractFactoryOfTheFutu
 			command.run();
 			return;
 		}
+		boolean recording = FlightRecorderEvents.recorderStarted();
+		SyncTaskEnqueueEvent event = beginEnqueueEvent(recording);
+		command = prepareTask(command, recording);
 		if (taskQueue.addTask(command)) {
-			waitStrategy.signalWhenTaskAdded(getPrimaryThread());
+			tasksAdded(1, event, TaskPriority.NORMAL);
 		}
 	}
 
+	private void executeSyncNoExceptionGuard(Runnable command, TaskPriority priority) {
+		if (isPrimaryThread()) {
+			command.run();
+			return;
+		}
+		boolean recording = FlightRecorderEvents.recorderStarted();
+		SyncTaskEnqueueEvent event = beginEnqueueEvent(recording);
+		command = prepareTask(command, recording);
+		if (taskQueue.addTask(command, priority)) {
+			tasksAdded(1, event, priority);
+		}
+	}
+
+	/**
+	 * Prepares a task for the task queue, wrapping it to be measured and watched as needed. <br>
+	 * <br>
+	 * Once the flight recorder has started, tasks are counted without checking which events
+	 * are enabled, so that the enqueue path checks at most one event type.
+	 *
+	 * @param command the task
+	 * @param recording whether the flight recorder has started
+	 * @return the task to add to the task queue
+	 */
+	private Runnable prepareTask(Runnable command, boolean recording) {
+		if (measured || recording) {
+			command = new MeasuredTask(command);
+		}
+		return watched(command);
+	}
+
+	/**
+	 * Wraps a task to be observed by the stall watchdog, if watched
+	 *
+	 * @param command the task
+	 * @return the watched task, or the same task if not watched
+	 */
+	private Runnable watched(Runnable command) {
+		StallWatchdog.Watch watch = stallWatch;
+		return (watch == null) ? command : watch.watched(command);
+	}
+
+	/**
+	 * Installs the stall watch of the primary thread. See {@link StallWatchdog#watch(DeadlockFreeFutureFactory)}
+	 *
+	 * @param watch the stall watch
+	 * @throws IllegalStateException if already watched
+	 */
+	void watchStalls(StallWatchdog.Watch watch) {
+		if (!STALL_WATCH.compareAndSet(this, (StallWatchdog.Watch) null, watch)) {
+			throw new IllegalStateException("Already watched by a stall watchdog");
+		}
+	}
+
+	/**
+	 * Removes the stall watch of the primary thread, so that tasks are no longer wrapped.
+	 * Called when the stall watchdog is closed
+	 *
+	 * @param watch the stall watch
+	 */
+	void unwatchStalls(StallWatchdog.Watch watch) {
+		STALL_WATCH.compareAndSet(this, watch, (StallWatchdog.Watch) null);
+	}
+
+	private static SyncTaskEnqueueEvent beginEnqueueEvent(boolean recording) {
+		if (!recording || !FlightRecorderEvents.enqueueEnabled()) {
+			return null;
+		}
+		SyncTaskEnqueueEvent event = new SyncTaskEnqueueEvent();
+		event.begin();
+		return event;
+	}
+
+	private void tasksAdded(int count, SyncTaskEnqueueEvent event, TaskPriority priority) {
+		if (measured) {
+			metrics.recordTasksEnqueued(count);
+		}
+		boolean signal = taskQueue.addedToEmptyQueue();
+		if (signal) {
+			signalTaskAdded();
+		}
+		if (event != null) {
+			event.taskCount = count;
+			event.priority = priority.name();
+			event.signalled = signal;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Signals that a task was added to an empty task queue. Overridden by factories which
+	 * must also wake the primary thread outside of managed waits.
+	 *
+	 */
+	void signalTaskAdded() {
+		waitStrategy.signalWhenTaskAdded(getPrimaryThread());
+	}
+
 	boolean requireSignalWhenFutureCompleted() {
-		return waitStrategy.requireSignalWhenFutureCompleted();
+		return signalEveryFuture;
 	}
 
 	void signalFutureCompleted() {
 		waitStrategy.signalWhenFutureCompleted(getPrimaryThread());
 	}
 
+	/**
+	 * Gets the factory which undertakes managed waits on the current thread. This is the factory
+	 * whose primary thread is the current thread, which need not be this factory if the primary
+	 * thread of another factory awaits a future of this factory.
+	 *
+	 * @return the factory whose primary thread is the current thread, or {@code null} if none
+	 */
+	DeadlockFreeFutureFactory waitingFactory() {
+		return (isPrimaryThread()) ? this : null;
+	}
+
+	private void registerInterest(DeadlockFreeFuture<?> future) {
+		if (signalAwaitedFutures
+				|| signalEveryFuture && (future.isDependentStage() || !future.isCreatedBy(this))) {
+			future.whenCompleteSignal(this);
+		}
+		if (signalEveryFuture && future.isCreatedBy(this)) {
+			// The signal may have been deferred by awaitAll or awaitAny
+			future.restoreSignal();
+		}
+	}
+
+	/**
+	 * Defers the completion signals of futures awaited through a barrier, which signals instead.
+	 * Only futures of this factory signal when completed explicitly
+	 *
+	 * @param futures the futures
+	 */
+	private void deferSignals(Collection<? extends CentralisedFuture<?>> futures) {
+		if (!signalEveryFuture || !isPrimaryThread()) {
+			return;
+		}
+		for (CentralisedFuture<?> future : futures) {
+			if (future instanceof DeadlockFreeFuture && ((DeadlockFreeFuture<?>) future).isCreatedBy(this)) {
+				((DeadlockFreeFuture<?>) future).deferSignal();
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of managed waits in progress on the primary thread. This is the depth of
+	 * nesting of managed waits: it is 1 within a managed wait, 2 within a managed wait started
+	 * by a sync task run during another managed wait, and so on.
+	 *
+	 * @return the depth of nested managed waits, or 0 if not called on the primary thread
+	 */
+	public int managedWaitDepth() {
+		return (isPrimaryThread()) ? waitDepth : 0;
+	}
+
+	/**
+	 * Enters a managed wait, applying the nesting limit
+	 *
+	 * @return true if entered, in which case {@code waitDepth} must be decremented afterward,
+	 * false to wait without draining
+	 * @throws IllegalStateException if the wait is refused
+	 */
+	private boolean enterWait() {
+		if (waitDepth >= nestingLimit.maxDepth()) {
+			if (nestingLimit.policy() == NestedWaitPolicy.FAIL) {
+				throw new IllegalStateException(
+						"Managed wait would exceed the nesting limit of " + nestingLimit.maxDepth());
+			}
+			return false;
+		}
+		waitDepth++;
+		return true;
+	}
+
+	private MeasuredWait beginMeasuredWait(DeadlockFreeFuture<?> future) {
+		ManagedWaitEvent event = null;
+		if (FlightRecorderEvents.managedWaitEnabled()) {
+			event = new ManagedWaitEvent();
+			event.begin();
+		} else if (!measured && !FlightRecorderEvents.drainEnabled()) {
+			return null;
+		}
+		return new MeasuredWait(future, event);
+	}
+
 	<T> T await(DeadlockFreeFuture<T> future) {
-		return waitStrategy.await(runQueuedTasks, future);
+		if (!enterWait()) {
+			return future.joinWithoutManagedWait();
+		}
+		StallWatchdog.Watch watch = stallWatch;
+		Object waitActivity = (watch == null) ? null : watch.enterWait(future);
+		try {
+			registerInterest(future);
+			MeasuredWait wait = beginMeasuredWait(future);
+			if (wait == null) {
+				return waitStrategy.await(runQueuedTasks, future);
+			}
+			try {
+				return waitStrategy.await(wait, future);
+			} finally {
+				wait.end();
+			}
+		} finally {
+			waitDepth--;
+			if (watch != null) {
+				watch.exit(waitActivity);
+			}
+		}
 	}
 
 	<T> T awaitInterruptibly(DeadlockFreeFuture<T> future) throws InterruptedException, ExecutionException {
-		return waitStrategy.awaitInterruptibly(runQueuedTasks, future);
+		if (!enterWait()) {
+			return future.getWithoutManagedWait();
+		}
+		StallWatchdog.Watch watch = stallWatch;
+		Object waitActivity = (watch == null) ? null : watch.enterWait(future);
+		try {
+			registerInterest(future);
+			MeasuredWait wait = beginMeasuredWait(future);
+			if (wait == null) {
+				return waitStrategy.awaitInterruptibly(runQueuedTasks, future);
+			}
+			try {
+				return waitStrategy.awaitInterruptibly(wait, future);
+			} finally {
+				wait.end();
+			}
+		} finally {
+			waitDepth--;
+			if (watch != null) {
+				watch.exit(waitActivity);
+			}
+		}
 	}
 
 	<T> T awaitUntil(DeadlockFreeFuture<T> future, long timeout, TimeUnit unit)
 			throws InterruptedException, TimeoutException, ExecutionException {
-		return waitStrategy.awaitUntil(runQueuedTasks, future, timeout, unit);
+		if (!enterWait()) {
+			return future.getWithoutManagedWait(timeout, unit);
+		}
+		StallWatchdog.Watch watch = stallWatch;
+		Object waitActivity = (watch == null) ? null : watch.enterWait(future);
+		try {
+			registerInterest(future);
+			MeasuredWait wait = beginMeasuredWait(future);
+			if (wait == null) {
+				return waitStrategy.awaitUntil(runQueuedTasks, future, timeout, unit);
+			}
+			try {
+				return waitStrategy.awaitUntil(wait, future, timeout, unit);
+			} finally {
+				wait.end();
+			}
+		} finally {
+			waitDepth--;
+			if (watch != null) {
+				watch.exit(waitActivity);
+			}
+		}
+	}
+
+	/**
+	 * Awaits the completion of all the given futures. If on the primary thread, a single managed
+	 * wait is undertaken for the whole collection, rather than one per future. <br>
+	 * <br>
+	 * Completions are tracked with a single counter, which completes a barrier upon the last
+	 * completion; the managed wait is undertaken on the barrier. Each incomplete future thereby
+	 * gains one dependent. The given futures do not signal the primary thread as they complete;
+	 * only the barrier does, so the primary thread is woken once for the whole collection,
+	 * besides wakeups to run queued tasks. Awaiting one of the futures individually restores its
+	 * signal. As with {@code allOf}, every future is awaited even if some complete exceptionally.
+	 *
+	 * @param futures the futures to await
+	 * @throws CompletionException if any future completed exceptionally, with the exception of
+	 * the first such future in iteration order as its cause
+	 * @throws CancellationException if the first such future was cancelled
+	 */
+	public void awaitAll(Collection<? extends CentralisedFuture<?>> futures) {
+		List<CentralisedFuture<?>> incomplete = null;
+		for (CentralisedFuture<?> future : futures) {
+			if (!future.isDone()) {
+				if (incomplete == null) {
+					incomplete = new ArrayList<>();
+				}
+				incomplete.add(future);
+			}
+		}
+		if (incomplete != null) {
+			deferSignals(incomplete);
+			DeadlockFreeFuture<Void> barrier = new DeadlockFreeFuture<>(this);
+			AllCompletedCounter counter = new AllCompletedCounter(incomplete.size(), barrier);
+			for (CentralisedFuture<?> future : incomplete) {
+				future.whenComplete(counter);
+			}
+			barrier.join();
+		}
+		for (CentralisedFuture<?> future : futures) {
+			// Throws CompletionException or CancellationException if completed exceptionally
+			future.getNow(null);
+		}
+	}
+
+	/**
+	 * Awaits the completion of any of the given futures, and returns its result. If on the primary
+	 * thread, a single managed wait is undertaken for the whole collection, rather than one per
+	 * future. The managed wait is undertaken on a barrier completed by the first completion.
+	 * As with {@link #awaitAll(Collection)}, only the barrier signals the primary thread.
+	 *
+	 * @param <T> the type of the result
+	 * @param futures the futures to await, which must not be empty
+	 * @return the result of the first future to complete
+	 * @throws IllegalArgumentException if the collection is empty
+	 * @throws CompletionException if the first future to complete completed exceptionally
+	 * @throws CancellationException if the first future to complete was cancelled
+	 */
+	public <T> T awaitAny(Collection<? extends CentralisedFuture<? extends T>> futures) {
+		if (futures.isEmpty()) {
+			throw new IllegalArgumentException("No futures to await");
+		}
+		for (CentralisedFuture<? extends T> future : futures) {
+			if (future.isDone()) {
+				return future.getNow(null);
+			}
+		}
+		deferSignals(futures);
+		DeadlockFreeFuture<T> barrier = new DeadlockFreeFuture<>(this);
+		BiConsumer<T, Throwable> firstCompleted = (result, ex) -> {
+			if (ex == null) {
+				barrier.complete(result);
+			} else {
+				barrier.completeExceptionally(ex);
+			}
+		};
+		for (CentralisedFuture<? extends T> future : futures) {
+			future.whenComplete(firstCompleted);
+			if (barrier.isDone()) {
+				break;
+			}
+		}
+		return barrier.join();
+	}
+
+	/**
+	 * Counts down completions for {@link #awaitAll(Collection)}, completing the barrier upon the last
+	 *
+	 */
+	private static final class AllCompletedCounter extends AtomicInteger implements BiConsumer<Object, Throwable> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient DeadlockFreeFuture<Void> barrier;
+
+		AllCompletedCounter(int count, DeadlockFreeFuture<Void> barrier) {
+			super(count);
+			this.barrier = barrier;
+		}
+
+		@Override
+		public void accept(Object result, Throwable ex) {
+			if (decrementAndGet() == 0) {
+				barrier.complete(null);
+			}
+		}
 	}
 
 	@Override
@@ -111,22 +601,503 @@ public abstract class DeadlockFreeFutureFactory extends AbstractFactoryOfTheFutu
 		executeSyncNoExceptionGuard(new RunnableExceptionReporter(command));
 	}
 
+	/**
+	 * Executes a batch of tasks on the primary thread, in iteration order. If already on the
+	 * primary thread, the tasks are run immediately. <br>
+	 * <br>
+	 * Otherwise, the batch is added to the task queue using {@link TaskQueue#addTasks(Collection)},
+	 * and the wait strategy is signalled at most once for the whole batch rather than once per task.
+	 *
+	 * @param commands the tasks
+	 */
+	public void executeSyncAll(Collection<? extends Runnable> commands) {
+		if (isPrimaryThread()) {
+			for (Runnable command : commands) {
+				new RunnableExceptionReporter(command).run();
+			}
+			return;
+		}
+		boolean recording = FlightRecorderEvents.recorderStarted();
+		SyncTaskEnqueueEvent event = beginEnqueueEvent(recording);
+		List<Runnable> tasks = new ArrayList<>(commands.size());
+		for (Runnable command : commands) {
+			tasks.add(prepareTask(new RunnableExceptionReporter(command), recording));
+		}
+		if (tasks.isEmpty()) {
+			return;
+		}
+		int added = taskQueue.addTasks(tasks);
+		if (added > 0) {
+			tasksAdded(added, event, TaskPriority.NORMAL);
+		}
+	}
+
+	/**
+	 * Executes a task on the primary thread, superseding any pending task executed with the same key.
+	 * Suited to updates where only the latest matters, such as applying the latest state of an entity. <br>
+	 * <br>
+	 * While a task for the key is pending, further tasks for the key replace it, so that at most one
+	 * task per key is queued and the latest one runs. Coalescing is provided by the task queue, see
+	 * {@link TaskQueue#addCoalescedTask(Object, Runnable)}; task queues which do not coalesce run
+	 * every task. <br>
+	 * <br>
+	 * If already on the primary thread, the pending task for the key is discarded, see
+	 * {@link TaskQueue#discardCoalescedTask(Object)}, and the task is run immediately. With task
+	 * queues which do not coalesce, a queued task for the key still runs afterward.
+	 *
+	 * @param key the key, compared using {@code equals} and {@code hashCode}
+	 * @param command the task
+	 * @throws NullPointerException if the key is null
+	 */
+	public void executeSyncCoalesced(Object key, Runnable command) {
+		Objects.requireNonNull(key, "key");
+		if (isPrimaryThread()) {
+			// Run immediately, as executeSync does, rather than adding to the queue from its consumer
+			taskQueue.discardCoalescedTask(key);
+			new RunnableExceptionReporter(command).run();
+			return;
+		}
+		boolean recording = FlightRecorderEvents.recorderStarted();
+		SyncTaskEnqueueEvent event = beginEnqueueEvent(recording);
+		Runnable task = prepareTask(new RunnableExceptionReporter(command), recording);
+		if (taskQueue.addCoalescedTask(key, task)) {
+			tasksAdded(1, event, TaskPriority.NORMAL);
+		}
+	}
+
+	/**
+	 * Adds a task to the task queue, even if called on the primary thread. Lets a task which
+	 * must run again on the primary thread yield to the other queued tasks first
+	 *
+	 * @param command the task
+	 */
+	void queueSync(Runnable command) {
+		boolean recording = FlightRecorderEvents.recorderStarted();
+		SyncTaskEnqueueEvent event = beginEnqueueEvent(recording);
+		Runnable task = prepareTask(new RunnableExceptionReporter(command), recording);
+		if (taskQueue.addTask(task)) {
+			tasksAdded(1, event, TaskPriority.NORMAL);
+		}
+	}
+
+	/**
+	 * Executes a task on the primary thread with the given priority. If already on the primary
+	 * thread, the task is run immediately. The priority is only honoured if the task queue
+	 * supports priorities, such as {@link PriorityTaskQueue}.
+	 *
+	 * @param command the task
+	 * @param priority the priority of the task
+	 * @throws NullPointerException if the priority is null
+	 */
+	public void executeSync(Runnable command, TaskPriority priority) {
+		executeSyncNoExceptionGuard(new RunnableExceptionReporter(command), Objects.requireNonNull(priority));
+	}
+
+	/**
+	 * Gets an executor which executes tasks on the primary thread with the given priority. Useful with
+	 * the {@code *Async} methods of {@link CentralisedFuture} which accept an executor, for example to
+	 * run urgent continuations ahead of bulk tasks.
+	 *
+	 * @param priority the priority of tasks executed through the executor
+	 * @return an executor for the given priority
+	 * @throws NullPointerException if the priority is null
+	 */
+	public Executor syncExecutor(TaskPriority priority) {
+		return prioritySyncExecutors[priority.ordinal()];
+	}
+
+	/**
+	 * Executes a task on the primary thread after the given delay. Equivalent to
+	 * {@link #scheduleSync(Runnable, long, TimeUnit)} without the means to cancel the task.
+	 *
+	 * @param command the task
+	 * @param delay the delay
+	 * @param unit the unit of the delay
+	 * @throws NullPointerException if the task or unit is null
+	 */
+	public void executeSyncLater(Runnable command, long delay, TimeUnit unit) {
+		scheduleSync(command, delay, unit);
+	}
+
+	/**
+	 * Schedules a task to run on the primary thread after the given delay. <br>
+	 * <br>
+	 * Scheduled tasks are kept in a hashed timing wheel of millisecond resolution, which the
+	 * primary thread advances during managed waits and whenever {@link #runDueSyncTasks()} is
+	 * called. The wait strategies of this library park no longer than the next deadline, so that
+	 * scheduled tasks run on time even while the primary thread is inside a managed wait. A task
+	 * never runs before its delay has elapsed.
+	 *
+	 * @param command the task
+	 * @param delay the delay. If not positive, the task runs when the wheel is next advanced
+	 * @param unit the unit of the delay
+	 * @return the scheduled task, which may be cancelled
+	 * @throws NullPointerException if the task or unit is null
+	 */
+	public ScheduledSyncTask scheduleSync(Runnable command, long delay, TimeUnit unit) {
+		ScheduledSyncTask scheduled = syncTimers.schedule(
+				watched(new RunnableExceptionReporter(Objects.requireNonNull(command, "command"))), unit.toNanos(delay));
+		if (!isPrimaryThread() && syncTimers.scheduledToEmpty()) {
+			// The primary thread must learn of the deadline before it next parks
+			signalTaskAdded();
+		}
+		return scheduled;
+	}
+
+	/**
+	 * Runs the scheduled sync tasks whose delay has elapsed. Must be called on the primary
+	 * thread. <br>
+	 * <br>
+	 * Managed waits run due tasks automatically. Applications driving the primary thread
+	 * themselves should call this method regularly, and may use {@link #nanosUntilNextSyncTask()}
+	 * to decide how long the primary thread may sleep.
+	 *
+	 * @throws IllegalStateException if not called on the primary thread
+	 */
+	public void runDueSyncTasks() {
+		if (!isPrimaryThread()) {
+			throw new IllegalStateException("Not on the primary thread");
+		}
+		syncTimers.runDueTasks();
+	}
+
+	/**
+	 * Gets the time until the next scheduled sync task is due. Must be called on the primary thread.
+	 *
+	 * @return the time in nanoseconds, which may be negative if a task is overdue, or {@code Long.MAX_VALUE}
+	 * if no task is scheduled
+	 * @throws IllegalStateException if not called on the primary thread
+	 */
+	public long nanosUntilNextSyncTask() {
+		if (!isPrimaryThread()) {
+			throw new IllegalStateException("Not on the primary thread");
+		}
+		return syncTimers.nanosUntilNextTask();
+	}
+
 	/**
 	 * Unleashes all sync tasks. Should only be run if known to be on main thread.
 	 *
 	 */
-	private class PeriodicSyncUnleasher implements Runnable {
+	private class PeriodicSyncUnleasher implements TimedTaskRunner {
 
 		@Override
 		public void run() {
+			syncTimers.runDueTasks();
 			taskQueue.pollAndRunAll();
 		}
+
+		@Override
+		public long nanosUntilNextTimer() {
+			return syncTimers.nanosUntilNextTask();
+		}
+	}
+
+	/**
+	 * Unleashes sync tasks within the wait drain bounds. Should only be run if known to be on main thread.
+	 *
+	 */
+	private class BoundedSyncUnleasher implements TimedTaskRunner {
+
+		@Override
+		public void run() {
+			syncTimers.runDueTasks();
+			if (!taskQueue.pollAndRun(waitDrainBounds)) {
+				// Tasks may remain. Ensure the managed wait runs them rather than sleeping
+				waitStrategy.signalWhenTaskAdded(getPrimaryThread());
+			}
+		}
+
+		@Override
+		public long nanosUntilNextTimer() {
+			return syncTimers.nanosUntilNextTask();
+		}
+	}
+
+	/**
+	 * Drains the task queue outside a managed wait, recording the drain if measured. Used by
+	 * the event loop of {@link EventLoopFutureFactory}
+	 *
+	 */
+	void drainTaskQueue() {
+		if (!measured) {
+			taskQueue.pollAndRunAll();
+			return;
+		}
+		int tasksRunBefore = tasksRun;
+		long drainStart = System.nanoTime();
+		taskQueue.pollAndRunAll();
+		metrics.recordDrain(System.nanoTime() - drainStart, tasksRun - tasksRunBefore);
+	}
+
+	/**
+	 * Counts a task from the task queue when it is run
+	 *
+	 */
+	private class MeasuredTask implements Runnable, TaskWrapper {
+
+		private final Runnable command;
+
+		MeasuredTask(Runnable command) {
+			this.command = command;
+		}
+
+		@Override
+		public Runnable wrapped() {
+			return command;
+		}
+
+		@Override
+		public void run() {
+			try {
+				command.run();
+			} finally {
+				tasksRun++;
+				metrics.recordTaskRun();
+			}
+		}
+	}
+
+	/**
+	 * Runs queued tasks on behalf of a single managed wait, measuring each drain
+	 * and the wait itself. Reports to the metrics, and to the flight recorder if the
+	 * wait event was begun.
+	 *
+	 */
+	private class MeasuredWait implements TimedTaskRunner {
+
+		private final CentralisedFuture<?> future;
+		private final ManagedWaitEvent event;
+		private final long startTime = System.nanoTime();
+		private int drains;
+		private int drainedTasks;
+		private int spuriousWakeups;
+
+		MeasuredWait(CentralisedFuture<?> future, ManagedWaitEvent event) {
+			this.future = future;
+			this.event = event;
+		}
+
+		@Override
+		public void run() {
+			SyncTaskDrainEvent drainEvent = null;
+			if (FlightRecorderEvents.drainEnabled()) {
+				drainEvent = new SyncTaskDrainEvent();
+				drainEvent.begin();
+			}
+			int tasksRunBefore = tasksRun;
+			long drainStart = System.nanoTime();
+			runQueuedTasks.run();
+			int drainedTasks = tasksRun - tasksRunBefore;
+			metrics.recordDrain(System.nanoTime() - drainStart, drainedTasks);
+			if (drainEvent != null) {
+				drainEvent.tasksRun = drainedTasks;
+				drainEvent.commit();
+			}
+			this.drainedTasks += drainedTasks;
+			if (drains++ > 0 && drainedTasks == 0 && !future.isDone()) {
+				spuriousWakeups++;
+			}
+		}
+
+		@Override
+		public long nanosUntilNextTimer() {
+			return runQueuedTasks.nanosUntilNextTimer();
+		}
+
+		void end() {
+			metrics.recordWait(System.nanoTime() - startTime, Math.max(0, drains - 1), spuriousWakeups);
+			if (event != null) {
+				event.end();
+				if (event.shouldCommit()) {
+					event.future = future.toString();
+					event.waitStrategy = waitStrategy.getClass();
+					event.iterations = drains;
+					event.tasksRun = drainedTasks;
+					event.commit();
+				}
+			}
+		}
+	}
+
+	/*
+	 * Batching of sync dependents
+	 *
+	 * Completing a future fires its dependents on the completing thread, and each sync
+	 * dependent reaches the trusted sync executor separately. While a future of this factory
+	 * is being completed off the primary thread, the first sync dependent fired is queued as
+	 * a batch, and later sync dependents are appended to that batch while it is still pending.
+	 * Nothing is held back, so a dependent which blocks on an earlier sync dependent cannot
+	 * deadlock the completing thread.
+	 */
+
+	/**
+	 * Begins a completion pass on the current thread. Nested completions, such as those of
+	 * dependent stages, append to the batch of the outermost pass
+	 *
+	 * @return the pass, to be passed to {@link #endDependentBatch(DependentBatch)}, or null if
+	 * not batching because on the primary thread or already batching for another factory
+	 */
+	DependentBatch beginDependentBatch() {
+		if (isPrimaryThread()) {
+			// Dependents run immediately on the primary thread
+			return null;
+		}
+		DependentBatch pass = dependentBatch.get();
+		if (pass == null) {
+			pass = new DependentBatch();
+			dependentBatch.set(pass);
+		}
+		if (pass.depth == 0) {
+			pass.factory = this;
+		} else if (pass.factory != this) {
+			return null;
+		}
+		pass.depth++;
+		return pass;
+	}
+
+	/**
+	 * Ends a completion pass. Dependents are already queued, so this only forgets the batch
+	 *
+	 * @param pass the pass returned from {@link #beginDependentBatch()}, may be null
+	 */
+	void endDependentBatch(DependentBatch pass) {
+		if (pass != null && --pass.depth == 0) {
+			pass.factory = null;
+			pass.queued = null;
+		}
+	}
+
+	/**
+	 * The completion pass of the current thread
+	 *
+	 */
+	static final class DependentBatch {
+
+		DeadlockFreeFutureFactory factory;
+		int depth;
+		/** The batch most recently queued during this pass, possibly already run */
+		BatchTask queued;
+
+	}
+
+	/**
+	 * A batch of dependents, queued as one task. The completing thread appends dependents
+	 * until the primary thread, having run every dependent, closes the batch. <br>
+	 * <br>
+	 * Dependents are completion tasks of {@code CompletableFuture}, which handle their own
+	 * exceptions. If a dependent throws nonetheless, the remaining dependents, including those
+	 * appended later, are queued as another task behind other sync tasks, else the batch is closed.
+	 *
+	 */
+	private static final class BatchTask implements Runnable {
+
+		private final DeadlockFreeFutureFactory factory;
+		private final Node first;
+		/** The last node appended. Accessed by the completing thread only */
+		private Node last;
+
+		BatchTask(DeadlockFreeFutureFactory factory, Runnable dependent) {
+			this(factory, new Node(dependent));
+		}
+
+		private BatchTask(DeadlockFreeFutureFactory factory, Node first) {
+			this.factory = factory;
+			this.first = last = first;
+		}
+
+		/**
+		 * Appends a dependent, unless the batch is closed
+		 *
+		 * @param dependent the dependent
+		 * @return true if appended, false if the batch is closed
+		 */
+		boolean append(Runnable dependent) {
+			Node node = new Node(dependent);
+			if (!Node.NEXT.compareAndSet(last, (Node) null, node)) {
+				return false;
+			}
+			last = node;
+			return true;
+		}
+
+		@Override
+		public void run() {
+			Node node = first;
+			try {
+				do {
+					node.dependent.run();
+					node = nextOrClose(node);
+				} while (node != null);
+			} finally {
+				if (node != null) {
+					// The dependent threw. Continue with the remaining dependents in another task
+					Node next = nextOrClose(node);
+					if (next != null) {
+						factory.queueSync(new BatchTask(factory, next));
+					}
+				}
+			}
+		}
+
+		/**
+		 * Gets the node after the given node, or closes the batch if there is none
+		 *
+		 * @param node the node
+		 * @return the next node, or null if the batch was closed
+		 */
+		private static Node nextOrClose(Node node) {
+			Node next = (Node) Node.NEXT.getAcquire(node);
+			if (next == null) {
+				next = (Node) Node.NEXT.compareAndExchange(node, (Node) null, Node.CLOSED);
+			}
+			return next;
+		}
+
+		@Override
+		public String toString() {
+			return "BatchTask{first=" + first.dependent + '}';
+		}
+
+		private static final class Node {
+
+			final Runnable dependent;
+			private volatile Node next;
+
+			static final Node CLOSED = new Node(null);
+			static final VarHandle NEXT;
+
+			static {
+				try {
+					NEXT = MethodHandles.lookup().findVarHandle(Node.class, "next", Node.class);
+				} catch (NoSuchFieldException | IllegalAccessException ex) {
+					throw new ExceptionInInitializerError(ex);
+				}
+			}
+
+			Node(Runnable dependent) {
+				this.dependent = dependent;
+			}
+		}
 	}
 
 	private class TrustedSyncExecutor implements SynchronousExecutor {
 
 		@Override
 		public void executeSync(Runnable command) {
+			DependentBatch pass = dependentBatch.get();
+			if (pass != null && pass.depth > 0 && pass.factory == DeadlockFreeFutureFactory.this) {
+				// Watch each dependent, so that a stall is attributed to the dependent
+				command = watched(command);
+				BatchTask queued = pass.queued;
+				if (queued == null || !queued.append(command)) {
+					queued = new BatchTask(DeadlockFreeFutureFactory.this, command);
+					pass.queued = queued;
+					executeSyncNoExceptionGuard(queued);
+				}
+				return;
+			}
 			executeSyncNoExceptionGuard(command);
 		}
 	}
@@ -136,6 +1107,10 @@ public abstract class DeadlockFreeFutureFactory extends AbstractFactoryOfTheFutu
 		return "DeadlockFreeFutureFactory{" +
 				"taskQueue=" + taskQueue +
 				", waitStrategy=" + waitStrategy +
+				", signalAwaitedFutures=" + signalAwaitedFutures +
+				", waitDrainBounds=" + waitDrainBounds +
+				", metrics=" + metrics +
+				", nestingLimit=" + nestingLimit +
 				", getPrimaryThread()=" + getPrimaryThread() +
 				'}';
 	}
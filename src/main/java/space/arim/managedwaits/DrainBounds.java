@@ -0,0 +1,151 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds on a single drain of a {@link TaskQueue}. A drain may be limited by a time budget,
+ * after which no further tasks are started, and may be limited to the tasks present in the
+ * queue when the drain began. Tasks which are not run remain queued for the next drain. <br>
+ * <br>
+ * Instances are immutable.
+ *
+ */
+public final class DrainBounds {
+
+	private final long timeBudget;
+	private final boolean snapshot;
+
+	private static final DrainBounds UNBOUNDED = new DrainBounds(Long.MAX_VALUE, false);
+	private static final DrainBounds SNAPSHOT = new DrainBounds(Long.MAX_VALUE, true);
+
+	private DrainBounds(long timeBudget, boolean snapshot) {
+		this.timeBudget = timeBudget;
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * Gets bounds which do not limit draining
+	 *
+	 * @return unbounded drain bounds
+	 */
+	public static DrainBounds unbounded() {
+		return UNBOUNDED;
+	}
+
+	/**
+	 * Gets bounds which limit draining to the tasks present when the drain began
+	 *
+	 * @return snapshot drain bounds
+	 */
+	public static DrainBounds snapshot() {
+		return SNAPSHOT;
+	}
+
+	/**
+	 * Creates bounds with the given time budget and snapshot mode
+	 *
+	 * @param timeBudget the time budget
+	 * @param unit the unit of the time budget
+	 * @param snapshot whether to limit draining to the tasks present when the drain began
+	 * @return the drain bounds
+	 * @throws IllegalArgumentException if the time budget is not positive
+	 * @throws NullPointerException if the unit is null
+	 */
+	public static DrainBounds of(long timeBudget, TimeUnit unit, boolean snapshot) {
+		Objects.requireNonNull(unit, "unit");
+		if (timeBudget <= 0) {
+			throw new IllegalArgumentException("time budget must be positive");
+		}
+		return new DrainBounds(unit.toNanos(timeBudget), snapshot);
+	}
+
+	/**
+	 * Whether these bounds include a time budget
+	 *
+	 * @return true if time bounded
+	 */
+	public boolean isTimeBounded() {
+		return timeBudget != Long.MAX_VALUE;
+	}
+
+	/**
+	 * Gets the time budget in nanoseconds, or {@code Long.MAX_VALUE} if not time bounded
+	 *
+	 * @return the time budget in nanoseconds
+	 */
+	public long timeBudgetNanos() {
+		return timeBudget;
+	}
+
+	/**
+	 * Whether draining is limited to the tasks present when the drain began
+	 *
+	 * @return true if in snapshot mode
+	 */
+	public boolean isSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Whether these bounds impose no limit at all
+	 *
+	 * @return true if unbounded
+	 */
+	public boolean isUnbounded() {
+		return !isTimeBounded() && !snapshot;
+	}
+
+	/**
+	 * Computes the deadline of a drain starting now. Only meaningful if time bounded.
+	 *
+	 * @return the deadline, comparable to {@link System#nanoTime()}
+	 */
+	long deadline() {
+		return System.nanoTime() + timeBudget;
+	}
+
+	@Override
+	public boolean equals(Object object) {
+		if (this == object) {
+			return true;
+		}
+		if (!(object instanceof DrainBounds)) {
+			return false;
+		}
+		DrainBounds that = (DrainBounds) object;
+		return timeBudget == that.timeBudget && snapshot == that.snapshot;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Long.hashCode(timeBudget) + (snapshot ? 1 : 0);
+	}
+
+	@Override
+	public String toString() {
+		return "DrainBounds{" +
+				"timeBudget=" + timeBudget +
+				", snapshot=" + snapshot +
+				'}';
+	}
+}
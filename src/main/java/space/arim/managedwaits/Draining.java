@@ -0,0 +1,87 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import java.util.Queue;
+
+final class Draining {
+
+	private Draining() {}
+
+	/**
+	 * Begins a snapshot of the given queue by enqueuing a marker. Tasks enqueued before the
+	 * marker were present when the snapshot began. <br>
+	 * <br>
+	 * A marker may be left in the queue if the drain ends early. Markers are no-op tasks,
+	 * and markers from other drains are skipped.
+	 *
+	 * @param tasks the task queue
+	 * @return the marker
+	 */
+	static Runnable beginSnapshot(Queue<Runnable> tasks) {
+		Runnable marker = new SnapshotMarker();
+		tasks.offer(marker);
+		return marker;
+	}
+
+	/**
+	 * Polls and runs tasks from the given queue until it is empty, until the snapshot marker
+	 * is reached, or until the deadline passes.
+	 *
+	 * @param tasks the task queue
+	 * @param snapshotMarker the marker from {@link #beginSnapshot(Queue)}, or null if not in snapshot mode
+	 * @param timed whether the deadline applies
+	 * @param deadline the deadline, comparable to {@link System#nanoTime()}
+	 * @return true if draining finished, false if the deadline passed
+	 */
+	static boolean pollAndRun(Queue<Runnable> tasks, Runnable snapshotMarker, boolean timed, long deadline) {
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			if (isSnapshotMarker(task)) {
+				if (task == snapshotMarker) {
+					return true;
+				}
+				continue;
+			}
+			task.run();
+			if (timed && deadlinePassed(deadline)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static boolean isSnapshotMarker(Runnable task) {
+		return task instanceof SnapshotMarker;
+	}
+
+	static boolean deadlinePassed(long deadline) {
+		return System.nanoTime() - deadline >= 0;
+	}
+
+	private static final class SnapshotMarker implements Runnable {
+
+		@Override
+		public void run() {
+			// Markers run as no-ops when drained without regard to snapshots
+		}
+	}
+
+}
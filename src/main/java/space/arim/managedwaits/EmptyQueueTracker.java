@@ -0,0 +1,71 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Tracks whether a task queue is empty from the perspective of signalling, so that only the
+ * first task added to an empty queue signals the primary thread. <br>
+ * <br>
+ * The queue counts as empty from the moment a drain begins, since the drain is bound to
+ * take every task present at that moment. The consumer marks the queue empty before polling,
+ * and producers check the mark after adding. Thus either the drain sees the task, or its
+ * producer sees the mark and signals.
+ *
+ */
+final class EmptyQueueTracker {
+
+	private volatile boolean empty = true;
+
+	private static final VarHandle EMPTY;
+
+	static {
+		try {
+			EMPTY = MethodHandles.lookup().findVarHandle(EmptyQueueTracker.class, "empty", boolean.class);
+		} catch (NoSuchFieldException | IllegalAccessException ex) {
+			throw new ExceptionInInitializerError(ex);
+		}
+	}
+
+	/**
+	 * Marks the queue empty. Must be called by the consumer before it begins polling
+	 *
+	 */
+	void beginDrain() {
+		if (!empty) {
+			// Avoid dirtying the cache line when already marked
+			empty = true;
+		}
+	}
+
+	/**
+	 * Claims the transition from empty to non-empty. Must be called by the producer after its
+	 * task is visible to the consumer
+	 *
+	 * @return true if the queue was marked empty, in which case the primary thread must be signalled
+	 */
+	boolean claimTransition() {
+		// Read first, so that producers do not contend while the queue is already non-empty
+		return empty && EMPTY.compareAndSet(this, true, false);
+	}
+
+}
@@ -0,0 +1,295 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link DeadlockFreeFutureFactory} which owns its primary thread and runs an event loop
+ * on it. <br>
+ * <br>
+ * The event loop drains the task queue whenever a task is added to it, and runs scheduled
+ * sync tasks when they are due, parking in between. If a tick period is given, the loop
+ * also ticks at that fixed rate; each tick runs the pre-tick hook, drains the task queue,
+ * and runs the post-tick hook. Exceptions thrown by the hooks are logged. <br>
+ * <br>
+ * The primary thread is only unparked by additions to the task queue while it is parked
+ * in the event loop, so that sync tasks using {@link LockSupport} and managed waits are not
+ * disturbed. The event loop is stopped by {@link #close()}, not by interruption: interrupting
+ * the primary thread affects the task running at the time, but once the loop is about to
+ * park again, any interrupt left over is cleared. <br>
+ * <br>
+ * The primary thread is started by {@link #start()}. It is stopped by {@link #close()},
+ * after which it drains the task queue once more and then terminates.
+ *
+ */
+public final class EventLoopFutureFactory extends DeadlockFreeFutureFactory implements AutoCloseable {
+
+	private final long tickPeriod;
+	private final Runnable preTick;
+	private final Runnable postTick;
+
+	private final Thread primaryThread;
+	private boolean started;
+	private volatile boolean closed;
+	/** Whether the event loop is parked, or a task was added since it last drained */
+	private volatile int loopState;
+
+	private static final int RUNNING = 0;
+	private static final int PARKED = 1;
+	private static final int SIGNALLED = 2;
+
+	private static final VarHandle LOOP_STATE;
+
+	static {
+		try {
+			LOOP_STATE = MethodHandles.lookup().findVarHandle(EventLoopFutureFactory.class, "loopState", int.class);
+		} catch (NoSuchFieldException | IllegalAccessException ex) {
+			throw new ExceptionInInitializerError(ex);
+		}
+	}
+
+	/**
+	 * Creates an instance which ticks at a fixed rate. The factory is otherwise configured as for
+	 * {@link DeadlockFreeFutureFactory#DeadlockFreeFutureFactory(TaskQueue, ManagedWaitStrategy, boolean, DrainBounds, ManagedWaitMetrics, NestingLimit)}
+	 *
+	 * @param taskQueue the task queue
+	 * @param waitStrategy the wait strategy
+	 * @param signalAwaitedFuturesOnly whether to signal completion of awaited futures only
+	 * @param waitDrainBounds the bounds on draining the task queue during managed waits
+	 * @param metrics the metrics to report to
+	 * @param nestingLimit the limit on nesting of managed waits
+	 * @param threadFactory the thread factory used to create the primary thread
+	 * @param tickPeriod the period between the start of successive ticks
+	 * @param unit the unit of the tick period
+	 * @param preTick the hook run at the start of each tick
+	 * @param postTick the hook run at the end of each tick
+	 * @throws IllegalArgumentException if the tick period is not positive
+	 * @throws NullPointerException if any object parameter is null
+	 */
+	public EventLoopFutureFactory(TaskQueue taskQueue, ManagedWaitStrategy waitStrategy,
+								  boolean signalAwaitedFuturesOnly, DrainBounds waitDrainBounds,
+								  ManagedWaitMetrics metrics, NestingLimit nestingLimit, ThreadFactory threadFactory,
+								  long tickPeriod, TimeUnit unit, Runnable preTick, Runnable postTick) {
+		this(taskQueue, waitStrategy, signalAwaitedFuturesOnly, waitDrainBounds, metrics, nestingLimit,
+				threadFactory, checkTickPeriod(unit.toNanos(tickPeriod)),
+				new RunnableExceptionReporter(Objects.requireNonNull(preTick, "preTick")),
+				new RunnableExceptionReporter(Objects.requireNonNull(postTick, "postTick")));
+	}
+
+	/**
+	 * Creates an instance which does not tick, and only drains the task queue when tasks are added.
+	 * The factory is otherwise configured as for
+	 * {@link DeadlockFreeFutureFactory#DeadlockFreeFutureFactory(TaskQueue, ManagedWaitStrategy, boolean, DrainBounds, ManagedWaitMetrics, NestingLimit)}
+	 *
+	 * @param taskQueue the task queue
+	 * @param waitStrategy the wait strategy
+	 * @param signalAwaitedFuturesOnly whether to signal completion of awaited futures only
+	 * @param waitDrainBounds the bounds on draining the task queue during managed waits
+	 * @param metrics the metrics to report to
+	 * @param nestingLimit the limit on nesting of managed waits
+	 * @param threadFactory the thread factory used to create the primary thread
+	 * @throws NullPointerException if any object parameter is null
+	 */
+	public EventLoopFutureFactory(TaskQueue taskQueue, ManagedWaitStrategy waitStrategy,
+								  boolean signalAwaitedFuturesOnly, DrainBounds waitDrainBounds,
+								  ManagedWaitMetrics metrics, NestingLimit nestingLimit, ThreadFactory threadFactory) {
+		this(taskQueue, waitStrategy, signalAwaitedFuturesOnly, waitDrainBounds, metrics, nestingLimit,
+				threadFactory, 0L, null, null);
+	}
+
+	/**
+	 * Creates an instance which ticks at a fixed rate, signals the completion of every future
+	 * if required by the wait strategy, drains without bounds, does not report metrics, and
+	 * does not limit nesting of managed waits.
+	 * See {@link #EventLoopFutureFactory(TaskQueue, ManagedWaitStrategy, boolean, DrainBounds, ManagedWaitMetrics, NestingLimit, ThreadFactory, long, TimeUnit, Runnable, Runnable)}
+	 *
+	 * @param taskQueue the task queue
+	 * @param waitStrategy the wait strategy
+	 * @param threadFactory the thread factory used to create the primary thread
+	 * @param tickPeriod the period between the start of successive ticks
+	 * @param unit the unit of the tick period
+	 * @param preTick the hook run at the start of each tick
+	 * @param postTick the hook run at the end of each tick
+	 * @throws IllegalArgumentException if the tick period is not positive
+	 * @throws NullPointerException if any object parameter is null
+	 */
+	public EventLoopFutureFactory(TaskQueue taskQueue, ManagedWaitStrategy waitStrategy, ThreadFactory threadFactory,
+								  long tickPeriod, TimeUnit unit, Runnable preTick, Runnable postTick) {
+		this(taskQueue, waitStrategy, false, DrainBounds.unbounded(), ManagedWaitMetrics.noop(),
+				NestingLimit.unbounded(), threadFactory, tickPeriod, unit, preTick, postTick);
+	}
+
+	/**
+	 * Creates an instance which does not tick, and only drains the task queue when tasks are added.
+	 * The factory signals the completion of every future if required by the wait strategy, drains
+	 * without bounds, does not report metrics, and does not limit nesting of managed waits.
+	 *
+	 * @param taskQueue the task queue
+	 * @param waitStrategy the wait strategy
+	 * @param threadFactory the thread factory used to create the primary thread
+	 * @throws NullPointerException if any parameter is null
+	 */
+	public EventLoopFutureFactory(TaskQueue taskQueue, ManagedWaitStrategy waitStrategy, ThreadFactory threadFactory) {
+		this(taskQueue, waitStrategy, false, DrainBounds.unbounded(), ManagedWaitMetrics.noop(),
+				NestingLimit.unbounded(), threadFactory);
+	}
+
+	private EventLoopFutureFactory(TaskQueue taskQueue, ManagedWaitStrategy waitStrategy,
+								   boolean signalAwaitedFuturesOnly, DrainBounds waitDrainBounds,
+								   ManagedWaitMetrics metrics, NestingLimit nestingLimit, ThreadFactory threadFactory,
+								   long tickPeriod, Runnable preTick, Runnable postTick) {
+		super(taskQueue, waitStrategy, signalAwaitedFuturesOnly, waitDrainBounds, metrics, nestingLimit);
+		this.tickPeriod = tickPeriod;
+		this.preTick = preTick;
+		this.postTick = postTick;
+		primaryThread = threadFactory.newThread(this::runLoop);
+		if (primaryThread == null) {
+			throw new IllegalStateException("Thread factory " + threadFactory + " rejected the primary thread");
+		}
+	}
+
+	private static long checkTickPeriod(long tickPeriod) {
+		if (tickPeriod <= 0L) {
+			throw new IllegalArgumentException("tickPeriod must be positive");
+		}
+		return tickPeriod;
+	}
+
+	/**
+	 * Starts the primary thread
+	 *
+	 * @throws IllegalStateException if already started
+	 */
+	public synchronized void start() {
+		if (started) {
+			throw new IllegalStateException("Already started");
+		}
+		started = true;
+		primaryThread.start();
+	}
+
+	/**
+	 * Stops the primary thread, if started. The primary thread drains the task queue once more,
+	 * then terminates.
+	 *
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		LockSupport.unpark(primaryThread);
+	}
+
+	/**
+	 * Waits for the primary thread to terminate after {@link #close()}
+	 *
+	 * @param timeout the maximum time to wait
+	 * @param unit the unit of the timeout
+	 * @return true if terminated, false if the timeout elapsed
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long millis = Math.max(unit.toMillis(timeout), 1L);
+		primaryThread.join(millis);
+		return !primaryThread.isAlive();
+	}
+
+	@Override
+	public boolean isPrimaryThread() {
+		return Thread.currentThread() == primaryThread;
+	}
+
+	@Override
+	public Thread getPrimaryThread() {
+		return primaryThread;
+	}
+
+	@Override
+	void signalTaskAdded() {
+		super.signalTaskAdded();
+		// The primary thread may be parked in the event loop rather than in a managed wait
+		if (loopState != SIGNALLED && (int) LOOP_STATE.getAndSet(this, SIGNALLED) == PARKED) {
+			LockSupport.unpark(primaryThread);
+		}
+	}
+
+	private void runLoop() {
+		boolean ticking = tickPeriod != 0L;
+		long nextTick = System.nanoTime();
+		while (!closed) {
+			// Tasks added from now on are either drained below or signal the loop
+			loopState = RUNNING;
+			runDueSyncTasks();
+			long untilTick = Long.MAX_VALUE;
+			if (ticking) {
+				long now = System.nanoTime();
+				untilTick = nextTick - now;
+				if (untilTick <= 0L) {
+					// Fixed rate: a tick which overruns is followed by the next tick at once, but
+					// ticks missed entirely, such as during a long pause, are skipped
+					nextTick = (untilTick > -tickPeriod) ? nextTick + tickPeriod : now + tickPeriod;
+					tick();
+					continue;
+				}
+			}
+			drainTaskQueue();
+			long parkTime = Math.min(untilTick, nanosUntilNextSyncTask());
+			if (parkTime > 0L) {
+				park(parkTime);
+			}
+		}
+		drainTaskQueue();
+	}
+
+	private void park(long parkTime) {
+		// The loop is stopped by close(), not by interruption, and cannot park while interrupted
+		Thread.interrupted();
+		if (!LOOP_STATE.compareAndSet(this, RUNNING, PARKED)) {
+			// A task was added since the loop last drained
+			return;
+		}
+		if (parkTime == Long.MAX_VALUE) {
+			LockSupport.park(this);
+		} else {
+			LockSupport.parkNanos(this, parkTime);
+		}
+		loopState = RUNNING;
+	}
+
+	private void tick() {
+		preTick.run();
+		drainTaskQueue();
+		postTick.run();
+	}
+
+	@Override
+	public String toString() {
+		return "EventLoopFutureFactory{" +
+				"tickPeriod=" + tickPeriod +
+				", closed=" + closed +
+				", factory=" + super.toString() +
+				'}';
+	}
+}
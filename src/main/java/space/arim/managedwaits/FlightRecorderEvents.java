@@ -0,0 +1,73 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Checks whether the flight recorder events of this library are enabled, so that
+ * measurements are only taken when they would be recorded. <br>
+ * <br>
+ * {@link SyncTaskEnqueueEvent} is disabled by default, since it occurs for every task.
+ * The other events are enabled by default and recorded as soon as a recording starts. <br>
+ * <br>
+ * The event types are only looked up once the flight recorder has started, so that
+ * applications which never record do not load the event metadata.
+ *
+ */
+final class FlightRecorderEvents {
+
+	private FlightRecorderEvents() {}
+
+	/**
+	 * Whether the flight recorder has started. Until then, no event can be enabled
+	 *
+	 * @return true if a recording may be taking place
+	 */
+	static boolean recorderStarted() {
+		return FlightRecorder.isInitialized();
+	}
+
+	static boolean managedWaitEnabled() {
+		return recorderStarted() && EventTypes.MANAGED_WAIT.isEnabled();
+	}
+
+	static boolean drainEnabled() {
+		return recorderStarted() && EventTypes.SYNC_TASK_DRAIN.isEnabled();
+	}
+
+	static boolean enqueueEnabled() {
+		return recorderStarted() && EventTypes.SYNC_TASK_ENQUEUE.isEnabled();
+	}
+
+	/**
+	 * Holds the event types, initialised when first used
+	 *
+	 */
+	private static final class EventTypes {
+
+		static final EventType MANAGED_WAIT = EventType.getEventType(ManagedWaitEvent.class);
+		static final EventType SYNC_TASK_DRAIN = EventType.getEventType(SyncTaskDrainEvent.class);
+		static final EventType SYNC_TASK_ENQUEUE = EventType.getEventType(SyncTaskEnqueueEvent.class);
+
+	}
+
+}
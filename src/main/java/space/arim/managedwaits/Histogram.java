@@ -0,0 +1,58 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values, such as durations in nanoseconds or task counts,
+ * with one bucket per power of two
+ *
+ */
+final class Histogram {
+
+	private final AtomicLongArray buckets = new AtomicLongArray(HistogramSnapshot.BUCKETS);
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		buckets.getAndIncrement(HistogramSnapshot.bucketOf(value));
+		sum.getAndAdd(value);
+		long currentMax;
+		while (value > (currentMax = max.get())) {
+			if (max.compareAndSet(currentMax, value)) {
+				break;
+			}
+		}
+	}
+
+	HistogramSnapshot snapshot() {
+		long[] counts = new long[HistogramSnapshot.BUCKETS];
+		for (int n = 0; n < counts.length; n++) {
+			counts[n] = buckets.get(n);
+		}
+		return new HistogramSnapshot(counts, sum.get(), max.get());
+	}
+
+}
@@ -0,0 +1,138 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+/**
+ * Point-in-time copy of a histogram of values, being durations in nanoseconds or counts
+ * depending on the histogram. Values are counted in buckets by powers of two: bucket
+ * {@code 0} holds values of zero, and bucket {@code n} holds values from {@code 2^(n-1)}
+ * up to {@code 2^n - 1}. <br>
+ * <br>
+ * Since the histogram is recorded concurrently, the count, sum and maximum may be
+ * very slightly inconsistent with each other. Instances are immutable.
+ *
+ */
+public final class HistogramSnapshot {
+
+	static final int BUCKETS = 64;
+
+	private final long[] bucketCounts;
+	private final long count;
+	private final long sum;
+	private final long max;
+
+	HistogramSnapshot(long[] bucketCounts, long sum, long max) {
+		this.bucketCounts = bucketCounts;
+		long count = 0;
+		for (long bucketCount : bucketCounts) {
+			count += bucketCount;
+		}
+		this.count = count;
+		this.sum = sum;
+		this.max = max;
+	}
+
+	static int bucketOf(long value) {
+		return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+	}
+
+	/**
+	 * Gets the number of recorded values
+	 *
+	 * @return the count
+	 */
+	public long count() {
+		return count;
+	}
+
+	/**
+	 * Gets the sum of all recorded values
+	 *
+	 * @return the sum
+	 */
+	public long sum() {
+		return sum;
+	}
+
+	/**
+	 * Gets the greatest recorded value
+	 *
+	 * @return the maximum, or 0 if nothing was recorded
+	 */
+	public long max() {
+		return max;
+	}
+
+	/**
+	 * Gets the mean recorded value
+	 *
+	 * @return the mean, or 0 if nothing was recorded
+	 */
+	public double mean() {
+		return (count == 0) ? 0D : (double) sum / count;
+	}
+
+	/**
+	 * Estimates the value at the given percentile. The estimate is the upper bound
+	 * of the bucket containing the percentile, and never exceeds the maximum.
+	 *
+	 * @param percentile the percentile, from 0 to 100
+	 * @return the estimated value, or 0 if nothing was recorded
+	 * @throws IllegalArgumentException if the percentile is out of range
+	 */
+	public long valueAtPercentile(double percentile) {
+		if (!(percentile >= 0D && percentile <= 100D)) {
+			throw new IllegalArgumentException("percentile must be between 0 and 100");
+		}
+		if (count == 0) {
+			return 0L;
+		}
+		long rank = Math.max(1L, (long) Math.ceil(percentile / 100D * count));
+		long seen = 0;
+		for (int n = 0; n < BUCKETS; n++) {
+			seen += bucketCounts[n];
+			if (seen >= rank) {
+				long upperBound = (n == 0) ? 0L : (n == BUCKETS - 1) ? Long.MAX_VALUE : (1L << n) - 1;
+				return Math.min(upperBound, max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Gets the count of values in each bucket
+	 *
+	 * @return a copy of the bucket counts
+	 */
+	public long[] bucketCounts() {
+		return bucketCounts.clone();
+	}
+
+	@Override
+	public String toString() {
+		return "HistogramSnapshot{" +
+				"count=" + count +
+				", sum=" + sum +
+				", mean=" + mean() +
+				", max=" + max +
+				'}';
+	}
+
+}
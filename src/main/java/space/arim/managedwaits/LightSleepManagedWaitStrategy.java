@@ -90,7 +90,7 @@ public final class LightSleepManagedWaitStrategy implements ManagedWaitStrategy
 			if ((result = reportJoin(future)) != ABSENT_VALUE) {	// if (isDone()) {
 				return result;										// return super.join(); }
 			}
-			LockSupport.parkNanos(this, sleepTime);
+			LockSupport.parkNanos(this, Math.min(sleepTime, TimedTaskRunner.parkLimit(runQueuedTasks)));
 		}
 	}
 
@@ -107,7 +107,7 @@ public final class LightSleepManagedWaitStrategy implements ManagedWaitStrategy
 			if ((result = reportGet(future)) != ABSENT_VALUE) {	// if (isDone()) {
 				return result;									// return super.get(); }
 			}
-			LockSupport.parkNanos(this, sleepTime);
+			LockSupport.parkNanos(this, Math.min(sleepTime, TimedTaskRunner.parkLimit(runQueuedTasks)));
 		}
 	}
 
@@ -130,7 +130,7 @@ public final class LightSleepManagedWaitStrategy implements ManagedWaitStrategy
 				throw new TimeoutException();
 			}
 			// Here, parkFor is used as a micro-optimization to likely avoid a call to System.nanoTime()
-			long parkFor = Math.min(delay, sleepTime);
+			long parkFor = Math.min(delay, Math.min(sleepTime, TimedTaskRunner.parkLimit(runQueuedTasks)));
 			LockSupport.parkNanos(this, parkFor);
 
 			// If delay != parkFor, it is not possible to have timed out at this moment
@@ -0,0 +1,47 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("space.arim.managedwaits.ManagedWait")
+@Label("Managed Wait")
+@Category("Managed Waits")
+@Description("The primary thread awaiting a future, running queued sync tasks meanwhile")
+final class ManagedWaitEvent extends Event {
+
+	@Label("Awaited Future")
+	String future;
+
+	@Label("Wait Strategy")
+	Class<?> waitStrategy;
+
+	@Label("Iterations")
+	@Description("The number of times the wait strategy ran queued tasks")
+	int iterations;
+
+	@Label("Tasks Run")
+	int tasksRun;
+
+}
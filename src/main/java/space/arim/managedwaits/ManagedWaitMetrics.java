@@ -0,0 +1,83 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+/**
+ * Receives measurements of managed waits and of the sync task queue from a
+ * {@link DeadlockFreeFutureFactory}. <br>
+ * <br>
+ * Apart from {@link #recordTasksEnqueued(int)}, all methods are called on the primary thread.
+ * Implementations must be cheap, since they are called while the primary thread is busy. <br>
+ * <br>
+ * The factory does not measure anything if given {@link #noop()}, which is the default.
+ * For a ready-made implementation which can be scraped, see {@link RecordingManagedWaitMetrics}.
+ *
+ */
+public interface ManagedWaitMetrics {
+
+	/**
+	 * Gets metrics which record nothing. A factory given these metrics skips measurement
+	 * entirely, thus there is no overhead.
+	 *
+	 * @return the no-op metrics
+	 */
+	static ManagedWaitMetrics noop() {
+		return NoopManagedWaitMetrics.INSTANCE;
+	}
+
+	/**
+	 * Records tasks added to the task queue. May be called from any thread
+	 *
+	 * @param count the number of tasks added
+	 */
+	void recordTasksEnqueued(int count);
+
+	/**
+	 * Records that a task from the task queue was run
+	 *
+	 */
+	void recordTaskRun();
+
+	/**
+	 * Records a drain of the task queue which the factory runs itself, such as during a
+	 * managed wait. <br>
+	 * <br>
+	 * Other drains are made by calling {@link TaskQueue#pollAndRunAll()} directly, such as from
+	 * the primary thread's own loop, and are not seen by the factory. They are not recorded,
+	 * although the tasks they run are counted by {@link #recordTaskRun()}.
+	 *
+	 * @param durationNanos the duration of the drain in nanoseconds
+	 * @param tasksRun the number of tasks run by the drain
+	 */
+	void recordDrain(long durationNanos, int tasksRun);
+
+	/**
+	 * Records a managed wait, once it has ended, whether normally or exceptionally. <br>
+	 * <br>
+	 * A wakeup is each time the wait strategy resumes to run queued tasks after having done so
+	 * once. A wakeup is spurious if no tasks were run and the awaited future was still incomplete.
+	 *
+	 * @param durationNanos the duration of the wait in nanoseconds
+	 * @param wakeups the number of wakeups
+	 * @param spuriousWakeups the number of those wakeups which were spurious
+	 */
+	void recordWait(long durationNanos, int wakeups, int spuriousWakeups);
+
+}
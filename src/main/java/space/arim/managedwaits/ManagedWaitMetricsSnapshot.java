@@ -0,0 +1,151 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+/**
+ * Point-in-time copy of the metrics recorded by {@link RecordingManagedWaitMetrics}. <br>
+ * <br>
+ * Instances are immutable.
+ *
+ */
+public final class ManagedWaitMetricsSnapshot {
+
+	private final long tasksEnqueued;
+	private final long tasksRun;
+	private final long waits;
+	private final long wakeups;
+	private final long spuriousWakeups;
+	private final HistogramSnapshot waitDurations;
+	private final HistogramSnapshot drainDurations;
+	private final HistogramSnapshot drainSizes;
+
+	ManagedWaitMetricsSnapshot(long tasksEnqueued, long tasksRun, long waits, long wakeups, long spuriousWakeups,
+							   HistogramSnapshot waitDurations, HistogramSnapshot drainDurations,
+							   HistogramSnapshot drainSizes) {
+		this.tasksEnqueued = tasksEnqueued;
+		this.tasksRun = tasksRun;
+		this.waits = waits;
+		this.wakeups = wakeups;
+		this.spuriousWakeups = spuriousWakeups;
+		this.waitDurations = waitDurations;
+		this.drainDurations = drainDurations;
+		this.drainSizes = drainSizes;
+	}
+
+	/**
+	 * Gets the number of tasks added to the task queue
+	 *
+	 * @return the tasks enqueued
+	 */
+	public long tasksEnqueued() {
+		return tasksEnqueued;
+	}
+
+	/**
+	 * Gets the number of tasks from the task queue which were run
+	 *
+	 * @return the tasks run
+	 */
+	public long tasksRun() {
+		return tasksRun;
+	}
+
+	/**
+	 * Gets the number of tasks in the task queue, computed as the tasks enqueued
+	 * less the tasks run
+	 *
+	 * @return the queue depth
+	 */
+	public long queueDepth() {
+		return Math.max(0L, tasksEnqueued - tasksRun);
+	}
+
+	/**
+	 * Gets the number of managed waits
+	 *
+	 * @return the waits
+	 */
+	public long waits() {
+		return waits;
+	}
+
+	/**
+	 * Gets the number of wakeups during managed waits. See {@link ManagedWaitMetrics#recordWait(long, int, int)}
+	 *
+	 * @return the wakeups
+	 */
+	public long wakeups() {
+		return wakeups;
+	}
+
+	/**
+	 * Gets the number of wakeups during managed waits which were spurious
+	 *
+	 * @return the spurious wakeups
+	 */
+	public long spuriousWakeups() {
+		return spuriousWakeups;
+	}
+
+	/**
+	 * Gets the histogram of managed wait durations, in nanoseconds
+	 *
+	 * @return the wait durations
+	 */
+	public HistogramSnapshot waitDurations() {
+		return waitDurations;
+	}
+
+	/**
+	 * Gets the histogram of durations of task queue drains, in nanoseconds. See
+	 * {@link ManagedWaitMetrics#recordDrain(long, int)} for which drains are recorded
+	 *
+	 * @return the drain durations
+	 */
+	public HistogramSnapshot drainDurations() {
+		return drainDurations;
+	}
+
+	/**
+	 * Gets the histogram of the number of tasks run by each task queue drain. The values of
+	 * this histogram are task counts
+	 *
+	 * @return the drain sizes
+	 */
+	public HistogramSnapshot drainSizes() {
+		return drainSizes;
+	}
+
+	@Override
+	public String toString() {
+		return "ManagedWaitMetricsSnapshot{" +
+				"tasksEnqueued=" + tasksEnqueued +
+				", tasksRun=" + tasksRun +
+				", queueDepth=" + queueDepth() +
+				", waits=" + waits +
+				", wakeups=" + wakeups +
+				", spuriousWakeups=" + spuriousWakeups +
+				", waitDurations=" + waitDurations +
+				", drainDurations=" + drainDurations +
+				", drainSizes=" + drainSizes +
+				'}';
+	}
+
+}
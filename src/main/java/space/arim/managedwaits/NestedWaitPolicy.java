@@ -0,0 +1,42 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+/**
+ * What a managed wait does when starting it would exceed the {@link NestingLimit}
+ *
+ */
+public enum NestedWaitPolicy {
+
+	/**
+	 * The wait fails immediately with an {@link IllegalStateException}, instead of nesting deeper
+	 */
+	FAIL,
+	/**
+	 * The wait blocks the primary thread without running queued tasks, deferring them to the
+	 * enclosing managed waits. <br>
+	 * <br>
+	 * The wait is then no longer deadlock-free: if the awaited future depends on a queued sync
+	 * task, it will never complete. Use only where such futures are known not to be awaited
+	 * from within sync tasks.
+	 */
+	BLOCK_WITHOUT_DRAINING
+
+}
@@ -0,0 +1,122 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import java.util.Objects;
+
+/**
+ * Limit on the nesting of managed waits. A sync task run during a managed wait may itself
+ * await a future on the primary thread, which starts a nested managed wait, which runs further
+ * sync tasks, and so on, growing the stack with each level. The limit caps the depth of such
+ * nesting, and its policy decides what happens to a wait beyond the limit. <br>
+ * <br>
+ * Instances are immutable.
+ *
+ */
+public final class NestingLimit {
+
+	private final int maxDepth;
+	private final NestedWaitPolicy policy;
+
+	private static final NestingLimit UNBOUNDED = new NestingLimit(Integer.MAX_VALUE, NestedWaitPolicy.FAIL);
+
+	private NestingLimit(int maxDepth, NestedWaitPolicy policy) {
+		this.maxDepth = maxDepth;
+		this.policy = policy;
+	}
+
+	/**
+	 * Gets a limit which allows unbounded nesting
+	 *
+	 * @return the unbounded nesting limit
+	 */
+	public static NestingLimit unbounded() {
+		return UNBOUNDED;
+	}
+
+	/**
+	 * Creates a limit with the given maximum depth and policy
+	 *
+	 * @param maxDepth the maximum number of managed waits in progress at once, including the outermost
+	 * @param policy the policy for waits beyond the maximum depth
+	 * @return the nesting limit
+	 * @throws IllegalArgumentException if the maximum depth is not positive
+	 * @throws NullPointerException if the policy is null
+	 */
+	public static NestingLimit of(int maxDepth, NestedWaitPolicy policy) {
+		Objects.requireNonNull(policy, "policy");
+		if (maxDepth <= 0) {
+			throw new IllegalArgumentException("max depth must be positive");
+		}
+		return new NestingLimit(maxDepth, policy);
+	}
+
+	/**
+	 * Gets the maximum depth, or {@code Integer.MAX_VALUE} if unbounded
+	 *
+	 * @return the maximum depth
+	 */
+	public int maxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * Gets the policy for waits beyond the maximum depth
+	 *
+	 * @return the policy
+	 */
+	public NestedWaitPolicy policy() {
+		return policy;
+	}
+
+	/**
+	 * Whether this limit allows unbounded nesting
+	 *
+	 * @return true if unbounded
+	 */
+	public boolean isUnbounded() {
+		return maxDepth == Integer.MAX_VALUE;
+	}
+
+	@Override
+	public boolean equals(Object object) {
+		if (this == object) {
+			return true;
+		}
+		if (!(object instanceof NestingLimit)) {
+			return false;
+		}
+		NestingLimit that = (NestingLimit) object;
+		return maxDepth == that.maxDepth && policy == that.policy;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * maxDepth + policy.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return "NestingLimit{" +
+				"maxDepth=" + maxDepth +
+				", policy=" + policy +
+				'}';
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * {@link TaskQueue} implementation with a separate lane for each {@link TaskPriority}. Within
+ * a lane, tasks run in the order they were added. <br>
+ * <br>
+ * Lanes are drained in weighted rounds. In each round, up to the lane's weight in tasks are run
+ * from each lane, from the most urgent lane to the least. Thus urgent tasks are preferred, yet
+ * lower priority lanes cannot be starved.
+ *
+ */
+public final class PriorityTaskQueue implements TaskQueue {
+
+	private static final TaskPriority[] PRIORITIES = TaskPriority.values();
+
+	private final ConcurrentLinkedQueue<Runnable>[] lanes;
+	private final int[] weights;
+	private final EmptyQueueTracker emptyQueueTracker = new EmptyQueueTracker();
+	private final TaskCoalescer coalescer = new TaskCoalescer();
+
+	/**
+	 * Creates using the specified lane weights
+	 *
+	 * @param urgentWeight the maximum urgent tasks run per round
+	 * @param normalWeight the maximum normal tasks run per round
+	 * @param backgroundWeight the maximum background tasks run per round
+	 * @throws IllegalArgumentException if any weight is not positive
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public PriorityTaskQueue(int urgentWeight, int normalWeight, int backgroundWeight) {
+		if (urgentWeight <= 0 || normalWeight <= 0 || backgroundWeight <= 0) {
+			throw new IllegalArgumentException("weights must be positive");
+		}
+		lanes = new ConcurrentLinkedQueue[PRIORITIES.length];
+		for (int n = 0; n < lanes.length; n++) {
+			lanes[n] = new ConcurrentLinkedQueue<>();
+		}
+		weights = new int[PRIORITIES.length];
+		weights[TaskPriority.URGENT.ordinal()] = urgentWeight;
+		weights[TaskPriority.NORMAL.ordinal()] = normalWeight;
+		weights[TaskPriority.BACKGROUND.ordinal()] = backgroundWeight;
+	}
+
+	/**
+	 * Creates using the default lane weights, which are 16 urgent tasks, 4 normal tasks,
+	 * and 1 background task per round
+	 *
+	 */
+	public PriorityTaskQueue() {
+		this(16, 4, 1);
+	}
+
+	@Override
+	public boolean addTask(Runnable task) {
+		return lanes[TaskPriority.NORMAL.ordinal()].offer(task);
+	}
+
+	@Override
+	public boolean addTask(Runnable task, TaskPriority priority) {
+		return lanes[priority.ordinal()].offer(task);
+	}
+
+	@Override
+	public int addTasks(Collection<? extends Runnable> tasks) {
+		lanes[TaskPriority.NORMAL.ordinal()].addAll(tasks);
+		return tasks.size();
+	}
+
+	@Override
+	public boolean addCoalescedTask(Object key, Runnable task) {
+		return coalescer.addTo(this, key, task);
+	}
+
+	@Override
+	public boolean discardCoalescedTask(Object key) {
+		return coalescer.discard(key);
+	}
+
+	@Override
+	public boolean addedToEmptyQueue() {
+		return emptyQueueTracker.claimTransition();
+	}
+
+	@Override
+	public void pollAndRunAll() {
+		emptyQueueTracker.beginDrain();
+		boolean ranAny;
+		do {
+			ranAny = false;
+			for (int n = 0; n < lanes.length; n++) {
+				ConcurrentLinkedQueue<Runnable> lane = lanes[n];
+				for (int ran = 0; ran < weights[n]; ran++) {
+					Runnable task = lane.poll();
+					if (task == null) {
+						break;
+					}
+					task.run();
+					ranAny = true;
+				}
+			}
+		} while (ranAny);
+	}
+
+	@Override
+	public boolean pollAndRun(DrainBounds bounds) {
+		if (bounds.isUnbounded()) {
+			pollAndRunAll();
+			return true;
+		}
+		emptyQueueTracker.beginDrain();
+		boolean timed = bounds.isTimeBounded();
+		long deadline = (timed) ? bounds.deadline() : 0L;
+		Runnable[] snapshotMarkers = null;
+		if (bounds.isSnapshot()) {
+			snapshotMarkers = new Runnable[lanes.length];
+			for (int n = 0; n < lanes.length; n++) {
+				snapshotMarkers[n] = Draining.beginSnapshot(lanes[n]);
+			}
+		}
+		int finishedLanes = 0;
+		int allLanes = (1 << lanes.length) - 1;
+		while (finishedLanes != allLanes) {
+			for (int n = 0; n < lanes.length; n++) {
+				int laneBit = 1 << n;
+				if ((finishedLanes & laneBit) != 0) {
+					continue;
+				}
+				ConcurrentLinkedQueue<Runnable> lane = lanes[n];
+				int ran = 0;
+				while (ran < weights[n]) {
+					Runnable task = lane.poll();
+					if (task == null || snapshotMarkers != null && task == snapshotMarkers[n]) {
+						finishedLanes |= laneBit;
+						break;
+					}
+					if (Draining.isSnapshotMarker(task)) {
+						// Left over from another drain
+						continue;
+					}
+					task.run();
+					ran++;
+					if (timed && Draining.deadlinePassed(deadline)) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "PriorityTaskQueue{" +
+				"urgentWeight=" + weights[TaskPriority.URGENT.ordinal()] +
+				", normalWeight=" + weights[TaskPriority.NORMAL.ordinal()] +
+				", backgroundWeight=" + weights[TaskPriority.BACKGROUND.ordinal()] +
+				'}';
+	}
+
+}
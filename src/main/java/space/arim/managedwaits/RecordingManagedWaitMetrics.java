@@ -0,0 +1,91 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link ManagedWaitMetrics} implementation which records counters and histograms,
+ * all of which are lock-free. Use {@link #snapshot()} to read the recorded metrics, for example
+ * to export them periodically.
+ *
+ */
+public final class RecordingManagedWaitMetrics implements ManagedWaitMetrics {
+
+	private final LongAdder tasksEnqueued = new LongAdder();
+	private final LongAdder tasksRun = new LongAdder();
+	private final LongAdder waits = new LongAdder();
+	private final LongAdder wakeups = new LongAdder();
+	private final LongAdder spuriousWakeups = new LongAdder();
+	private final Histogram waitDurations = new Histogram();
+	private final Histogram drainDurations = new Histogram();
+	private final Histogram drainSizes = new Histogram();
+
+	/**
+	 * Creates an instance
+	 *
+	 */
+	public RecordingManagedWaitMetrics() {}
+
+	@Override
+	public void recordTasksEnqueued(int count) {
+		tasksEnqueued.add(count);
+	}
+
+	@Override
+	public void recordTaskRun() {
+		tasksRun.increment();
+	}
+
+	@Override
+	public void recordDrain(long durationNanos, int tasksRun) {
+		drainDurations.record(durationNanos);
+		drainSizes.record(tasksRun);
+	}
+
+	@Override
+	public void recordWait(long durationNanos, int wakeups, int spuriousWakeups) {
+		waits.increment();
+		this.wakeups.add(wakeups);
+		this.spuriousWakeups.add(spuriousWakeups);
+		waitDurations.record(durationNanos);
+	}
+
+	/**
+	 * Takes a snapshot of the metrics recorded so far
+	 *
+	 * @return the snapshot
+	 */
+	public ManagedWaitMetricsSnapshot snapshot() {
+		// Read tasks run before tasks enqueued, so that the queue depth does not appear negative
+		long tasksRun = this.tasksRun.sum();
+		return new ManagedWaitMetricsSnapshot(
+				tasksEnqueued.sum(), tasksRun, waits.sum(), wakeups.sum(), spuriousWakeups.sum(),
+				waitDurations.snapshot(), drainDurations.snapshot(), drainSizes.snapshot());
+	}
+
+	@Override
+	public String toString() {
+		return "RecordingManagedWaitMetrics{" +
+				"snapshot=" + snapshot() +
+				'}';
+	}
+
+}
@@ -0,0 +1,448 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link TaskQueue} implementation backed by a preallocated array ring buffer which supports
+ * multiple producers and a single consumer. Adding and running tasks does not allocate,
+ * unless the queue is full and the task is spilled to an overflow queue. <br>
+ * <br>
+ * The capacity is always a power of two. The producer and consumer sequences are padded to
+ * reside on separate cache lines.
+ *
+ */
+public final class RingBufferTaskQueue implements TaskQueue {
+
+	private final AtomicReferenceArray<Runnable> buffer;
+	private final int capacity;
+	private final int mask;
+	private final FullQueuePolicy fullQueuePolicy;
+
+	private final Sequence producerSequence = new Sequence();
+	private final Sequence consumerSequence = new Sequence();
+
+	private final ConcurrentLinkedQueue<OverflowEntry> overflow;
+	/**
+	 * The thread which last drained the queue. Written by the consumer only, and read by
+	 * producers only to recognise the consumer, so a stale read is harmless
+	 */
+	private Thread consumerThread;
+	private final EmptyQueueTracker emptyQueueTracker = new EmptyQueueTracker();
+	private final TaskCoalescer coalescer = new TaskCoalescer();
+
+	private static final System.Logger logger = System.getLogger(RingBufferTaskQueue.class.getName());
+
+	/**
+	 * Creates using the specified capacity and full queue policy
+	 *
+	 * @param capacity the capacity, which is rounded up to the nearest power of two
+	 * @param fullQueuePolicy the policy for adding tasks when the queue is full
+	 * @throws IllegalArgumentException if the capacity is not positive or greater than {@code 2^30}
+	 * @throws NullPointerException if the full queue policy is null
+	 */
+	public RingBufferTaskQueue(int capacity, FullQueuePolicy fullQueuePolicy) {
+		if (capacity <= 0 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("capacity must be positive and not greater than 2^30");
+		}
+		this.capacity = (capacity == 1) ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		mask = this.capacity - 1;
+		buffer = new AtomicReferenceArray<>(this.capacity);
+		this.fullQueuePolicy = Objects.requireNonNull(fullQueuePolicy, "fullQueuePolicy");
+		overflow = (fullQueuePolicy == FullQueuePolicy.REJECT) ? null : new ConcurrentLinkedQueue<>();
+	}
+
+	/**
+	 * Creates with a capacity of 1024 which spills to an overflow queue when full
+	 *
+	 */
+	public RingBufferTaskQueue() {
+		this(1024, FullQueuePolicy.SPILL);
+	}
+
+	/**
+	 * Gets the capacity of the ring buffer
+	 *
+	 * @return the capacity, a power of two
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	private int index(long sequence) {
+		return (int) sequence & mask;
+	}
+
+	/**
+	 * Attempts to claim a slot and publish the task into it
+	 *
+	 * @param task the task
+	 * @return true if published, false if the ring buffer is full
+	 */
+	private boolean offer(Runnable task) {
+		for (;;) {
+			long producerSeq = producerSequence.getVolatile();
+			if (producerSeq - consumerSequence.getAcquire() >= capacity) {
+				return false;
+			}
+			if (producerSequence.compareAndSet(producerSeq, producerSeq + 1)) {
+				buffer.setRelease(index(producerSeq), task);
+				return true;
+			}
+		}
+	}
+
+	@Override
+	public boolean addTask(Runnable task) {
+		// A null task would be read as an unpublished slot, blocking the consumer for good
+		Objects.requireNonNull(task, "task");
+		if (overflow != null && !overflow.isEmpty()) {
+			// Preserve ordering while the overflow is being drained
+			return spill(task);
+		}
+		if (offer(task)) {
+			return true;
+		}
+		switch (fullQueuePolicy) {
+		case SPILL:
+			return spill(task);
+		case WAIT:
+			if (Thread.currentThread() == consumerThread) {
+				// The consumer would wait on itself
+				return spill(task);
+			}
+			awaitSpaceAndOffer(task);
+			return true;
+		case REJECT:
+			logger.log(System.Logger.Level.WARNING, "Task queue full, rejected task " + task);
+			return false;
+		default:
+			throw new IllegalStateException("Unknown policy " + fullQueuePolicy);
+		}
+	}
+
+	@Override
+	public int addTasks(Collection<? extends Runnable> tasks) {
+		/*
+		 * Copy and validate the batch first. Once slots are claimed, they must be published,
+		 * else the consumer would stop at them forever
+		 */
+		Object[] batch = tasks.toArray();
+		for (Object task : batch) {
+			Objects.requireNonNull(task, "task");
+		}
+		int added = 0;
+		if (overflow == null || overflow.isEmpty()) {
+			// Claim as many slots as are available with a single CAS
+			long producerSeq;
+			do {
+				producerSeq = producerSequence.getVolatile();
+				long available = capacity - (producerSeq - consumerSequence.getAcquire());
+				added = (int) Math.min(batch.length, available);
+				if (added <= 0) {
+					added = 0;
+					break;
+				}
+			} while (!producerSequence.compareAndSet(producerSeq, producerSeq + added));
+
+			for (int n = 0; n < added; n++) {
+				buffer.setRelease(index(producerSeq + n), (Runnable) batch[n]);
+			}
+		}
+		// Whatever did not fit is subject to the full queue policy
+		int claimed = added;
+		for (int n = claimed; n < batch.length; n++) {
+			if (addTask((Runnable) batch[n])) {
+				added++;
+			}
+		}
+		return added;
+	}
+
+	@Override
+	public boolean addCoalescedTask(Object key, Runnable task) {
+		return coalescer.addTo(this, key, task);
+	}
+
+	@Override
+	public boolean discardCoalescedTask(Object key) {
+		return coalescer.discard(key);
+	}
+
+	@Override
+	public boolean addedToEmptyQueue() {
+		// Slots are published with release stores, which may otherwise be reordered with the next load
+		VarHandle.fullFence();
+		return emptyQueueTracker.claimTransition();
+	}
+
+	/**
+	 * Records the thread draining the queue, and marks the queue empty before draining. The
+	 * fence orders the mark before reading slots, which use acquire loads
+	 *
+	 */
+	private void beginDrain() {
+		Thread currentThread = Thread.currentThread();
+		if (consumerThread != currentThread) {
+			consumerThread = currentThread;
+		}
+		emptyQueueTracker.beginDrain();
+		VarHandle.fullFence();
+	}
+
+	private boolean spill(Runnable task) {
+		return overflow.offer(new OverflowEntry(task, producerSequence.getVolatile()));
+	}
+
+	private void awaitSpaceAndOffer(Runnable task) {
+		int spins = 0;
+		while (!offer(task)) {
+			if (spins < 100) {
+				spins++;
+				Thread.onSpinWait();
+			} else {
+				LockSupport.parkNanos(this, 1_000L);
+			}
+		}
+	}
+
+	/**
+	 * Runs the tasks in the ring buffer. Stops upon reaching a slot which is empty,
+	 * which is either the end of the queue or a slot claimed by a producer which has yet
+	 * to publish its task. In the latter case, the producer will signal once it has published,
+	 * since the queue was marked empty when the drain began.
+	 *
+	 * @param endSequence the producer sequence at which to stop, or {@code Long.MAX_VALUE} if unlimited
+	 * @param timed whether the deadline applies
+	 * @param deadline the deadline, comparable to {@link System#nanoTime()}
+	 * @return true if draining finished, false if the deadline passed
+	 */
+	private boolean pollAndRunRing(long endSequence, boolean timed, long deadline) {
+		for (;;) {
+			// Re-read each time, since a task may itself drain the queue during a managed wait
+			long consumerSeq = consumerSequence.getPlain();
+			if (consumerSeq - endSequence >= 0) {
+				return true;
+			}
+			int index = index(consumerSeq);
+			Runnable task = buffer.getAcquire(index);
+			if (task == null) {
+				return true;
+			}
+			buffer.setPlain(index, null);
+			// Release the slot before running the task, so that producers need not wait on it
+			consumerSequence.setRelease(consumerSeq + 1);
+			task.run();
+			if (timed && Draining.deadlinePassed(deadline)) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Runs tasks in the overflow queue. Stops at an entry spilled while older tasks were in
+	 * the ring buffer, if those tasks have yet to be run. This can happen when draining the ring
+	 * stopped at a slot whose producer has yet to publish its task, or when the ring was refilled
+	 * and spilled again while the overflow was being drained.
+	 *
+	 * @param snapshotMarker the snapshot marker entry, or null if not in snapshot mode
+	 * @param timed whether the deadline applies
+	 * @param deadline the deadline, comparable to {@link System#nanoTime()}
+	 * @return true if draining finished, false if the deadline passed
+	 */
+	private boolean pollAndRunOverflow(OverflowEntry snapshotMarker, boolean timed, long deadline) {
+		OverflowEntry entry;
+		while ((entry = overflow.peek()) != null) {
+			Runnable task = entry.task;
+			if (task == null) {
+				// Snapshot marker
+				overflow.poll();
+				if (entry == snapshotMarker) {
+					return true;
+				}
+				continue;
+			}
+			if (consumerSequence.getPlain() - entry.ringSequence < 0) {
+				return true;
+			}
+			overflow.poll();
+			task.run();
+			if (timed && Draining.deadlinePassed(deadline)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void pollAndRunAll() {
+		beginDrain();
+		for (;;) {
+			pollAndRunRing(Long.MAX_VALUE, false, 0L);
+			OverflowEntry head;
+			if (overflow == null || (head = overflow.peek()) == null) {
+				return;
+			}
+			pollAndRunOverflow(null, false, 0L);
+			if (overflow.peek() == head) {
+				// No progress. The producer of the blocking ring slot will signal once it has published
+				return;
+			}
+			// Tasks may have been added to the ring meanwhile
+		}
+	}
+
+	@Override
+	public boolean pollAndRun(DrainBounds bounds) {
+		if (bounds.isUnbounded()) {
+			pollAndRunAll();
+			return true;
+		}
+		beginDrain();
+		boolean timed = bounds.isTimeBounded();
+		long deadline = (timed) ? bounds.deadline() : 0L;
+		if (!bounds.isSnapshot()) {
+			return pollAndRunRing(Long.MAX_VALUE, timed, deadline)
+					&& (overflow == null || pollAndRunOverflow(null, timed, deadline));
+		}
+		long endSequence = producerSequence.getVolatile();
+		/*
+		 * A marker is only needed if the overflow has tasks. Otherwise, it would needlessly
+		 * divert producers to the overflow until the marker is drained
+		 */
+		OverflowEntry overflowMarker = null;
+		if (overflow != null && !overflow.isEmpty()) {
+			overflowMarker = new OverflowEntry(null, Long.MIN_VALUE);
+			overflow.offer(overflowMarker);
+		}
+		return pollAndRunRing(endSequence, timed, deadline)
+				&& (overflowMarker == null || pollAndRunOverflow(overflowMarker, timed, deadline));
+	}
+
+	@Override
+	public String toString() {
+		return "RingBufferTaskQueue{" +
+				"capacity=" + capacity +
+				", fullQueuePolicy=" + fullQueuePolicy +
+				'}';
+	}
+
+	/**
+	 * Policy for adding tasks when the ring buffer is full
+	 *
+	 */
+	public enum FullQueuePolicy {
+
+		/**
+		 * Spills tasks to an unbounded overflow queue, which is drained after the ring buffer.
+		 * While the overflow queue is non-empty, all tasks are added to it, so that ordering
+		 * is preserved.
+		 */
+		SPILL,
+		/**
+		 * Makes the adding thread wait until space is available. <br>
+		 * <br>
+		 * Since tasks must run on the primary thread, the adding thread cannot run the
+		 * task itself. Instead it pays for the full queue by waiting. <br>
+		 * <br>
+		 * The primary thread, which drains the queue, would wait on itself. Tasks which it adds
+		 * to the full queue are instead spilled to an overflow queue, as with {@link #SPILL}.
+		 */
+		WAIT,
+		/**
+		 * Rejects the task, logging a warning, in which case {@link #addTask(Runnable)} returns false
+		 */
+		REJECT
+
+	}
+
+	/**
+	 * Task in the overflow queue, alongside the producer sequence at the time it was spilled.
+	 * It may only run once the ring buffer has been drained up to that sequence.
+	 * Entries with a null task are snapshot markers.
+	 */
+	private static final class OverflowEntry {
+
+		final Runnable task;
+		final long ringSequence;
+
+		OverflowEntry(Runnable task, long ringSequence) {
+			this.task = task;
+			this.ringSequence = ringSequence;
+		}
+	}
+
+	/*
+	 * Sequence padded on both sides to occupy its own cache line. Superclasses
+	 * are used for padding because field order within a class is not guaranteed.
+	 */
+
+	@SuppressWarnings("unused")
+	private static abstract class SequenceLeftPadding {
+		long p01, p02, p03, p04, p05, p06, p07;
+	}
+
+	private static abstract class SequenceValue extends SequenceLeftPadding {
+		volatile long value;
+	}
+
+	@SuppressWarnings("unused")
+	private static final class Sequence extends SequenceValue {
+		long p11, p12, p13, p14, p15, p16, p17;
+
+		private static final VarHandle VALUE;
+
+		static {
+			try {
+				VALUE = MethodHandles.lookup().findVarHandle(SequenceValue.class, "value", long.class);
+			} catch (NoSuchFieldException | IllegalAccessException ex) {
+				throw new ExceptionInInitializerError(ex);
+			}
+		}
+
+		long getPlain() {
+			return (long) VALUE.get(this);
+		}
+
+		long getAcquire() {
+			return (long) VALUE.getAcquire(this);
+		}
+
+		long getVolatile() {
+			return value;
+		}
+
+		void setRelease(long newValue) {
+			VALUE.setRelease(this, newValue);
+		}
+
+		boolean compareAndSet(long expect, long update) {
+			return VALUE.compareAndSet(this, expect, update);
+		}
+	}
+
+}
@@ -19,7 +19,7 @@
 
 package space.arim.managedwaits;
 
-class RunnableExceptionReporter implements Runnable {
+class RunnableExceptionReporter implements Runnable, TaskWrapper {
 
 	private final Runnable command;
 
@@ -29,6 +29,11 @@ class RunnableExceptionReporter implements Runnable {
 		this.command = command;
 	}
 
+	@Override
+	public Runnable wrapped() {
+		return command;
+	}
+
 	@Override
 	public void run() {
 		try {
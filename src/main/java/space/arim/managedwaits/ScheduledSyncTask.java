@@ -0,0 +1,52 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A sync task scheduled to run on the primary thread after a delay. See
+ * {@link DeadlockFreeFutureFactory#scheduleSync(Runnable, long, TimeUnit)}
+ *
+ */
+public interface ScheduledSyncTask {
+
+	/**
+	 * Cancels the task, if it has not yet run
+	 *
+	 * @return true if cancelled by this call, false if it already ran or was already cancelled
+	 */
+	boolean cancel();
+
+	/**
+	 * Whether the task was cancelled
+	 *
+	 * @return true if cancelled
+	 */
+	boolean isCancelled();
+
+	/**
+	 * Whether the task has run or been cancelled
+	 *
+	 * @return true if run or cancelled
+	 */
+	boolean isDone();
+
+}
@@ -0,0 +1,279 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import space.arim.omnibus.util.concurrent.CentralisedFuture;
+import space.arim.omnibus.util.concurrent.FactoryOfTheFuture;
+import space.arim.omnibus.util.concurrent.impl.AbstractFactoryOfTheFuture;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.List;
+
+/**
+ * {@link FactoryOfTheFuture} implementation for applications with several primary threads,
+ * each of which owns a shard of the application's state. Every shard has its own task queue
+ * and wait strategy, and is itself a {@link DeadlockFreeFutureFactory}. <br>
+ * <br>
+ * Tasks are routed to the owning shard by key, using {@link #executeSync(Object, Runnable)}
+ * or {@link #shardFor(Object)}. Each primary thread must bind itself to its shard using
+ * {@link Shard#bindPrimaryThread()} before running the shard's task queue. <br>
+ * <br>
+ * When a primary thread awaits a future, it undertakes a managed wait on its own shard,
+ * running its own queued tasks, regardless of which shard created the future. Thus a primary
+ * thread may await a future completed on another primary thread without deadlock, even if
+ * the other primary thread is meanwhile awaiting a future completed by the former. <br>
+ * <br>
+ * Tasks submitted without a key, and futures created without a key, belong to the shard
+ * of the current primary thread, or the first shard if not on a primary thread.
+ *
+ * @author A248
+ */
+public final class ShardedFutureFactory extends AbstractFactoryOfTheFuture {
+
+	private final Shard[] shards;
+	private final ThreadLocal<Shard> currentShard = new ThreadLocal<>();
+
+	private static final VarHandle PRIMARY_THREAD;
+
+	static {
+		try {
+			PRIMARY_THREAD = MethodHandles.lookup().findVarHandle(Shard.class, "primaryThread", Thread.class);
+		} catch (NoSuchFieldException | IllegalAccessException ex) {
+			throw new ExceptionInInitializerError(ex);
+		}
+	}
+
+	/**
+	 * Creates an instance with as many shards as task queues. The shard at each index uses
+	 * the task queue and wait strategy at the same index. <br>
+	 * <br>
+	 * The remaining parameters configure every shard, as for the constructor of
+	 * {@link DeadlockFreeFutureFactory#DeadlockFreeFutureFactory(TaskQueue, ManagedWaitStrategy, boolean, DrainBounds, ManagedWaitMetrics, NestingLimit)}.
+	 * The metrics are shared by all shards.
+	 *
+	 * @param taskQueues the task queues of the shards
+	 * @param waitStrategies the wait strategies of the shards
+	 * @param signalAwaitedFuturesOnly whether to signal completion of awaited futures only
+	 * @param waitDrainBounds the bounds on draining each task queue during managed waits
+	 * @param metrics the metrics to report to
+	 * @param nestingLimit the limit on nesting of managed waits on each primary thread
+	 * @throws NullPointerException if any object parameter, or any element of either list, is null
+	 * @throws IllegalArgumentException if the lists are empty or differ in size
+	 */
+	public ShardedFutureFactory(List<? extends TaskQueue> taskQueues,
+								List<? extends ManagedWaitStrategy> waitStrategies,
+								boolean signalAwaitedFuturesOnly, DrainBounds waitDrainBounds,
+								ManagedWaitMetrics metrics, NestingLimit nestingLimit) {
+		int shardCount = taskQueues.size();
+		if (shardCount == 0 || shardCount != waitStrategies.size()) {
+			throw new IllegalArgumentException(
+					"Require an equal, positive number of task queues and wait strategies");
+		}
+		shards = new Shard[shardCount];
+		for (int n = 0; n < shardCount; n++) {
+			shards[n] = new Shard(n, taskQueues.get(n), waitStrategies.get(n),
+					signalAwaitedFuturesOnly, waitDrainBounds, metrics, nestingLimit);
+		}
+	}
+
+	/**
+	 * Creates an instance with as many shards as task queues, whose shards signal the completion
+	 * of every future if required by the wait strategy, drain without bounds, do not report metrics,
+	 * and do not limit nesting of managed waits.
+	 * See {@link #ShardedFutureFactory(List, List, boolean, DrainBounds, ManagedWaitMetrics, NestingLimit)}
+	 *
+	 * @param taskQueues the task queues of the shards
+	 * @param waitStrategies the wait strategies of the shards
+	 * @throws NullPointerException if either list or any of its elements is null
+	 * @throws IllegalArgumentException if the lists are empty or differ in size
+	 */
+	public ShardedFutureFactory(List<? extends TaskQueue> taskQueues,
+								List<? extends ManagedWaitStrategy> waitStrategies) {
+		this(taskQueues, waitStrategies, false, DrainBounds.unbounded(), ManagedWaitMetrics.noop(),
+				NestingLimit.unbounded());
+	}
+
+	/**
+	 * Gets the number of shards
+	 *
+	 * @return the shard count
+	 */
+	public int shardCount() {
+		return shards.length;
+	}
+
+	/**
+	 * Gets the shard at the given index
+	 *
+	 * @param index the index of the shard
+	 * @return the shard
+	 * @throws IndexOutOfBoundsException if the index is out of bounds
+	 */
+	public Shard shard(int index) {
+		return shards[index];
+	}
+
+	/**
+	 * Gets all shards, in index order
+	 *
+	 * @return an immutable list of the shards
+	 */
+	public List<Shard> shards() {
+		return List.of(shards);
+	}
+
+	/**
+	 * Gets the shard owning the given key. The same key is always routed to the same shard.
+	 *
+	 * @param key the key, whose {@code hashCode} is used for routing
+	 * @return the owning shard
+	 * @throws NullPointerException if the key is null
+	 */
+	public Shard shardFor(Object key) {
+		int hash = key.hashCode();
+		// Spread the higher bits, as for HashMap
+		hash ^= (hash >>> 16);
+		return shards[Math.floorMod(hash, shards.length)];
+	}
+
+	/**
+	 * Gets the shard whose primary thread is the current thread
+	 *
+	 * @return the current shard, or {@code null} if not on a primary thread
+	 */
+	public Shard currentShard() {
+		return currentShard.get();
+	}
+
+	private Shard currentOrFirstShard() {
+		Shard shard = currentShard.get();
+		return (shard == null) ? shards[0] : shard;
+	}
+
+	/**
+	 * Executes a task on the primary thread of the shard owning the given key. If already on
+	 * that primary thread, the task is run immediately.
+	 *
+	 * @param key the key whose shard should run the task
+	 * @param command the task
+	 * @throws NullPointerException if either parameter is null
+	 */
+	public void executeSync(Object key, Runnable command) {
+		shardFor(key).executeSync(command);
+	}
+
+	@Override
+	public void executeSync(Runnable command) {
+		currentOrFirstShard().executeSync(command);
+	}
+
+	@Override
+	public <T> CentralisedFuture<T> newIncompleteFuture() {
+		return currentOrFirstShard().newIncompleteFuture();
+	}
+
+	/**
+	 * Whether the current thread is the primary thread of any shard
+	 *
+	 * @return true if on a primary thread, false otherwise
+	 */
+	public boolean isPrimaryThread() {
+		return currentShard.get() != null;
+	}
+
+	/**
+	 * One shard of a {@link ShardedFutureFactory}, with its own primary thread, task queue
+	 * and wait strategy
+	 *
+	 */
+	public final class Shard extends DeadlockFreeFutureFactory {
+
+		private final int index;
+		private volatile Thread primaryThread;
+
+		private Shard(int index, TaskQueue taskQueue, ManagedWaitStrategy waitStrategy,
+					  boolean signalAwaitedFuturesOnly, DrainBounds waitDrainBounds,
+					  ManagedWaitMetrics metrics, NestingLimit nestingLimit) {
+			super(taskQueue, waitStrategy, signalAwaitedFuturesOnly, waitDrainBounds, metrics, nestingLimit);
+			this.index = index;
+		}
+
+		/**
+		 * Gets the index of this shard
+		 *
+		 * @return the index
+		 */
+		public int index() {
+			return index;
+		}
+
+		/**
+		 * Binds the current thread as the primary thread of this shard. Must be called once,
+		 * by the primary thread, before it runs the shard's task queue. <br>
+		 * <br>
+		 * A thread may be the primary thread of at most one shard.
+		 *
+		 * @throws IllegalStateException if this shard is already bound, or if the current
+		 * thread is already the primary thread of another shard
+		 */
+		public void bindPrimaryThread() {
+			if (currentShard.get() != null) {
+				throw new IllegalStateException("Current thread already bound to shard " + currentShard.get().index);
+			}
+			Thread boundThread = (Thread) PRIMARY_THREAD.compareAndExchange(this, (Thread) null, Thread.currentThread());
+			if (boundThread != null) {
+				throw new IllegalStateException("Shard " + index + " already bound to " + boundThread);
+			}
+			currentShard.set(this);
+		}
+
+		@Override
+		public boolean isPrimaryThread() {
+			return Thread.currentThread() == primaryThread;
+		}
+
+		@Override
+		public Thread getPrimaryThread() {
+			return primaryThread;
+		}
+
+		@Override
+		DeadlockFreeFutureFactory waitingFactory() {
+			// Wait on the shard of the current thread, which need not be this shard
+			return currentShard.get();
+		}
+
+		@Override
+		public String toString() {
+			return "Shard{" +
+					"index=" + index +
+					", factory=" + super.toString() +
+					'}';
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ShardedFutureFactory{" +
+				"shards=" + List.of(shards) +
+				'}';
+	}
+}
@@ -19,6 +19,7 @@
 
 package space.arim.managedwaits;
 
+import java.util.Collection;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
@@ -28,18 +29,55 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 public final class SimpleTaskQueue implements TaskQueue {
 
 	private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+	private final EmptyQueueTracker emptyQueueTracker = new EmptyQueueTracker();
+	private final TaskCoalescer coalescer = new TaskCoalescer();
 
 	@Override
 	public boolean addTask(Runnable task) {
 		return tasks.offer(task); // always true since CLQ is unbounded
 	}
 
+	@Override
+	public int addTasks(Collection<? extends Runnable> batch) {
+		// CLQ links the batch privately, then appends it with a single CAS
+		tasks.addAll(batch); // always succeeds since CLQ is unbounded
+		return batch.size();
+	}
+
+	@Override
+	public boolean addCoalescedTask(Object key, Runnable task) {
+		return coalescer.addTo(this, key, task);
+	}
+
+	@Override
+	public boolean discardCoalescedTask(Object key) {
+		return coalescer.discard(key);
+	}
+
+	@Override
+	public boolean addedToEmptyQueue() {
+		return emptyQueueTracker.claimTransition();
+	}
+
 	@Override
 	public void pollAndRunAll() {
+		emptyQueueTracker.beginDrain();
 		Runnable syncTask;
 		while ((syncTask = tasks.poll()) != null) {
 			syncTask.run();
 		}
 	}
 
+	@Override
+	public boolean pollAndRun(DrainBounds bounds) {
+		if (bounds.isUnbounded()) {
+			pollAndRunAll();
+			return true;
+		}
+		emptyQueueTracker.beginDrain();
+		Runnable snapshotMarker = (bounds.isSnapshot()) ? Draining.beginSnapshot(tasks) : null;
+		boolean timed = bounds.isTimeBounded();
+		return Draining.pollAndRun(tasks, snapshotMarker, timed, (timed) ? bounds.deadline() : 0L);
+	}
+
 }
@@ -0,0 +1,115 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import space.arim.omnibus.util.concurrent.CentralisedFuture;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Details of a stall of the primary thread detected by {@link StallWatchdog}. A stall is
+ * either a long running sync task or a long managed wait. <br>
+ * <br>
+ * Instances are immutable.
+ *
+ */
+public final class StallReport {
+
+	private final Runnable task;
+	private final CentralisedFuture<?> awaitedFuture;
+	private final long durationNanos;
+	private final Thread thread;
+	private final StackTraceElement[] stackTrace;
+
+	StallReport(Runnable task, CentralisedFuture<?> awaitedFuture, long durationNanos,
+				Thread thread, StackTraceElement[] stackTrace) {
+		this.task = task;
+		this.awaitedFuture = awaitedFuture;
+		this.durationNanos = durationNanos;
+		this.thread = thread;
+		this.stackTrace = stackTrace;
+	}
+
+	/**
+	 * Gets the sync task which was running, as originally submitted
+	 *
+	 * @return the task, or {@code null} if the stall is a managed wait
+	 */
+	public Runnable task() {
+		return task;
+	}
+
+	/**
+	 * Gets the future being awaited
+	 *
+	 * @return the awaited future, or {@code null} if the stall is a sync task
+	 */
+	public CentralisedFuture<?> awaitedFuture() {
+		return awaitedFuture;
+	}
+
+	/**
+	 * Whether the stall is a managed wait rather than a sync task
+	 *
+	 * @return true if a managed wait
+	 */
+	public boolean isManagedWait() {
+		return awaitedFuture != null;
+	}
+
+	/**
+	 * Gets how long the task or wait had been running when the stall was detected. For tasks,
+	 * this is measured from when the watchdog first saw the task, so it may fall short of the
+	 * true duration by up to the watchdog's check interval.
+	 *
+	 * @return the duration in nanoseconds
+	 */
+	public long durationNanos() {
+		return durationNanos;
+	}
+
+	/**
+	 * Gets the primary thread
+	 *
+	 * @return the primary thread
+	 */
+	public Thread thread() {
+		return thread;
+	}
+
+	/**
+	 * Gets the stack trace of the primary thread when the stall was detected
+	 *
+	 * @return a copy of the stack trace
+	 */
+	public StackTraceElement[] stackTrace() {
+		return stackTrace.clone();
+	}
+
+	@Override
+	public String toString() {
+		return "StallReport{" +
+				((isManagedWait()) ? "awaitedFuture=" + awaitedFuture : "task=" + task) +
+				", durationMillis=" + TimeUnit.NANOSECONDS.toMillis(durationNanos) +
+				", thread=" + thread +
+				'}';
+	}
+
+}
@@ -0,0 +1,360 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import space.arim.omnibus.util.concurrent.CentralisedFuture;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Watchdog which detects stalls of primary threads, being sync tasks or managed waits
+ * which run longer than a threshold. When a stall is detected, the stack trace of the primary
+ * thread is captured and reported along with the offending task or awaited future. Each stall
+ * is reported once. <br>
+ * <br>
+ * The watchdog observes the factories given to {@link #watch(DeadlockFreeFutureFactory)}. Each
+ * factory wraps the sync tasks it hands to the primary thread, including scheduled tasks and
+ * the sync dependents of futures, and marks its managed waits. The primary thread publishes
+ * each task it runs with a single release store, and marks the task finished on the task
+ * itself; the watchdog skips finished tasks lazily. Timing is left to the watchdog thread,
+ * which checks a few times per threshold. <br>
+ * <br>
+ * The state of each watched factory is kept separately, so that one watchdog may watch several
+ * primary threads, such as the shards of a {@link ShardedFutureFactory}. <br>
+ * <br>
+ * The watchdog thread is a daemon thread. It is started by {@link #start()} and stopped by
+ * {@link #close()}, which also stops the watched factories from wrapping tasks.
+ *
+ */
+public final class StallWatchdog implements AutoCloseable {
+
+	private final long threshold;
+	private final long checkInterval;
+	private final Consumer<StallReport> reporter;
+	private final List<Watch> watches = new CopyOnWriteArrayList<>();
+
+	private Thread watchdogThread;
+	private volatile boolean closed;
+
+	private static final System.Logger logger = System.getLogger(StallWatchdog.class.getName());
+
+	/**
+	 * Creates using the specified threshold and reporter
+	 *
+	 * @param threshold the duration after which a task or managed wait is considered stalled
+	 * @param unit the unit of the threshold
+	 * @param reporter the reporter of stalls, called on the watchdog thread
+	 * @throws IllegalArgumentException if the threshold is not positive
+	 * @throws NullPointerException if the unit or reporter is null
+	 */
+	public StallWatchdog(long threshold, TimeUnit unit, Consumer<StallReport> reporter) {
+		if (threshold <= 0) {
+			throw new IllegalArgumentException("threshold must be positive");
+		}
+		this.threshold = unit.toNanos(threshold);
+		checkInterval = Math.max(this.threshold / 4, TimeUnit.MILLISECONDS.toNanos(1L));
+		this.reporter = Objects.requireNonNull(reporter, "reporter");
+	}
+
+	/**
+	 * Creates using the specified threshold, logging stalls as warnings
+	 *
+	 * @param threshold the duration after which a task or managed wait is considered stalled
+	 * @param unit the unit of the threshold
+	 * @throws IllegalArgumentException if the threshold is not positive
+	 * @throws NullPointerException if the unit is null
+	 */
+	public StallWatchdog(long threshold, TimeUnit unit) {
+		this(threshold, unit, StallWatchdog::logStall);
+	}
+
+	private static void logStall(StallReport report) {
+		Throwable stackTrace = new Throwable("Stack trace of " + report.thread());
+		stackTrace.setStackTrace(report.stackTrace());
+		logger.log(System.Logger.Level.WARNING, "Primary thread stalled: " + report, stackTrace);
+	}
+
+	/**
+	 * Watches the primary thread of the given factory. Only tasks submitted to the factory
+	 * after this call are watched. <br>
+	 * <br>
+	 * To watch a {@link ShardedFutureFactory}, watch each of its shards.
+	 *
+	 * @param factory the factory
+	 * @throws IllegalStateException if the factory is already watched, or this watchdog is closed
+	 */
+	public synchronized void watch(DeadlockFreeFutureFactory factory) {
+		if (closed) {
+			throw new IllegalStateException("Closed");
+		}
+		Watch watch = new Watch(factory);
+		factory.watchStalls(watch);
+		watches.add(watch);
+	}
+
+	/**
+	 * Starts the watchdog thread
+	 *
+	 * @throws IllegalStateException if already started
+	 */
+	public synchronized void start() {
+		if (watchdogThread != null) {
+			throw new IllegalStateException("Already started");
+		}
+		watchdogThread = new Thread(this::watchLoop, "managedwaits-stall-watchdog");
+		watchdogThread.setDaemon(true);
+		watchdogThread.start();
+	}
+
+	/**
+	 * Stops the watchdog thread, if started, and stops watching the watched factories
+	 *
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		for (Watch watch : watches) {
+			watch.factory.unwatchStalls(watch);
+		}
+		watches.clear();
+		if (watchdogThread != null) {
+			LockSupport.unpark(watchdogThread);
+		}
+	}
+
+	/*
+	 * Watchdog thread side
+	 */
+
+	private void watchLoop() {
+		while (!closed) {
+			LockSupport.parkNanos(this, checkInterval);
+			for (Watch watch : watches) {
+				check(watch);
+			}
+		}
+	}
+
+	private void check(Watch watch) {
+		Activity current = watch.current();
+		if (current == null) {
+			return;
+		}
+		long now = System.nanoTime();
+		if (!current.seen) {
+			current.seen = true;
+			current.since = now;
+		}
+		if (current.reported || now - current.since < threshold) {
+			return;
+		}
+		Thread thread = watch.factory.getPrimaryThread();
+		if (thread == null) {
+			return;
+		}
+		StackTraceElement[] stackTrace = thread.getStackTrace();
+		if (watch.current() != current) {
+			// Ended while capturing the stack trace
+			return;
+		}
+		current.reported = true;
+		StallReport report;
+		if (current instanceof WaitActivity) {
+			report = new StallReport(null, ((WaitActivity) current).future, now - current.since, thread, stackTrace);
+		} else {
+			report = new StallReport(TaskWrapper.unwrap((WatchedTask) current), null, now - current.since, thread, stackTrace);
+		}
+		try {
+			reporter.accept(report);
+		} catch (RuntimeException ex) {
+			logger.log(System.Logger.Level.WARNING, "Exception while reporting stall " + report, ex);
+		}
+	}
+
+	/**
+	 * The state of a single watched primary thread. Tasks and managed waits publish themselves
+	 * as the current activity, linked to the enclosing activity, if any. When done, they mark
+	 * themselves finished rather than restoring the enclosing activity, which the watchdog
+	 * does lazily, so that nested tasks and waits are each attributed correctly
+	 *
+	 */
+	static final class Watch {
+
+		final DeadlockFreeFutureFactory factory;
+		/** The latest task or managed wait to start. Written by the primary thread only */
+		private volatile Activity current;
+
+		private static final VarHandle CURRENT;
+
+		static {
+			try {
+				CURRENT = MethodHandles.lookup().findVarHandle(Watch.class, "current", Activity.class);
+			} catch (NoSuchFieldException | IllegalAccessException ex) {
+				throw new ExceptionInInitializerError(ex);
+			}
+		}
+
+		Watch(DeadlockFreeFutureFactory factory) {
+			this.factory = factory;
+		}
+
+		/**
+		 * Wraps a task so that it is watched when run
+		 *
+		 * @param task the task
+		 * @return the watched task
+		 */
+		Runnable watched(Runnable task) {
+			return new WatchedTask(this, task);
+		}
+
+		/**
+		 * Marks the start of a managed wait. Must be called on the primary thread
+		 *
+		 * @param future the awaited future
+		 * @return the wait, to be passed to {@link #exit(Object)}
+		 */
+		Object enterWait(CentralisedFuture<?> future) {
+			WaitActivity wait = new WaitActivity(future);
+			// The start time of a wait is known, unlike that of a task
+			wait.seen = true;
+			wait.since = System.nanoTime();
+			enter(wait);
+			return wait;
+		}
+
+		private void enter(Activity activity) {
+			// Plain read, since only the primary thread writes
+			Activity enclosing = (Activity) CURRENT.get(this);
+			activity.enclosing = unfinished(enclosing);
+			CURRENT.setRelease(this, activity);
+		}
+
+		/**
+		 * Marks a task or managed wait finished. Must be called on the primary thread
+		 *
+		 * @param activity the task or managed wait
+		 */
+		void exit(Object activity) {
+			((Activity) activity).finish();
+		}
+
+		/**
+		 * Gets the innermost unfinished task or managed wait
+		 *
+		 * @return the current activity, or null if none
+		 */
+		Activity current() {
+			return unfinished((Activity) CURRENT.getAcquire(this));
+		}
+
+		private static Activity unfinished(Activity activity) {
+			while (activity != null && activity.isFinished()) {
+				activity = activity.enclosing;
+			}
+			return activity;
+		}
+	}
+
+	/**
+	 * A task or managed wait. Apart from the finished flag and the enclosing activity, the fields
+	 * are accessed by the watchdog thread only, except that a managed wait sets them before
+	 * publishing itself
+	 *
+	 */
+	private abstract static class Activity {
+
+		/** The unfinished activity when this one started, set before publishing */
+		Activity enclosing;
+		/** Whether finished. Written by the primary thread only */
+		private boolean finished;
+		/** Whether the watchdog has seen this activity */
+		boolean seen;
+		/** When the watchdog first saw the task, or when the managed wait began */
+		long since;
+		boolean reported;
+
+		private static final VarHandle FINISHED;
+
+		static {
+			try {
+				FINISHED = MethodHandles.lookup().findVarHandle(Activity.class, "finished", boolean.class);
+			} catch (NoSuchFieldException | IllegalAccessException ex) {
+				throw new ExceptionInInitializerError(ex);
+			}
+		}
+
+		void finish() {
+			FINISHED.setOpaque(this, true);
+		}
+
+		boolean isFinished() {
+			return (boolean) FINISHED.getOpaque(this);
+		}
+	}
+
+	private static final class WatchedTask extends Activity implements Runnable, TaskWrapper {
+
+		private final Watch watch;
+		private final Runnable task;
+
+		WatchedTask(Watch watch, Runnable task) {
+			this.watch = watch;
+			this.task = task;
+		}
+
+		@Override
+		public Runnable wrapped() {
+			return task;
+		}
+
+		@Override
+		public void run() {
+			watch.enter(this);
+			try {
+				task.run();
+			} finally {
+				finish();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return task.toString();
+		}
+	}
+
+	private static final class WaitActivity extends Activity {
+
+		final CentralisedFuture<?> future;
+
+		WaitActivity(CentralisedFuture<?> future) {
+			this.future = future;
+		}
+	}
+
+}
@@ -0,0 +1,424 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link TaskQueue} implementation which spreads producers across stripes, so that producers
+ * on different stripes do not contend on a shared tail. <br>
+ * <br>
+ * Each producer thread is hashed to a stripe, which is a linked multi-producer, single-consumer
+ * queue. Adding a task costs a single atomic exchange on the stripe's tail, which never retries,
+ * and the tails of distinct stripes reside on separate cache lines. With at least as many stripes
+ * as producer threads, most producers have a stripe to themselves. The primary thread drains every
+ * stripe. <br>
+ * <br>
+ * See {@link Ordering} for the ordering of tasks across stripes.
+ *
+ */
+public final class StripedTaskQueue implements TaskQueue {
+
+	private final Stripe[] stripes;
+	private final int mask;
+
+	/** Global sequence, or null unless ordering globally */
+	private final AtomicLong sequence;
+	/** Tasks taken from the stripes and awaiting their turn. Accessed on the primary thread only */
+	private final PriorityQueue<Node> ready;
+	/** The sequence number of the next task to run. Accessed on the primary thread only */
+	private long nextSequence;
+	/** The stripe at which a bounded drain resumes. Accessed on the primary thread only */
+	private int nextStripe;
+
+	private final EmptyQueueTracker emptyQueueTracker = new EmptyQueueTracker();
+	private final TaskCoalescer coalescer = new TaskCoalescer();
+
+	/**
+	 * Ordering of tasks added by different producers
+	 *
+	 */
+	public enum Ordering {
+
+		/**
+		 * Tasks added by the same producer thread run in the order added. Tasks added by different
+		 * producers may run in any order.
+		 */
+		PER_PRODUCER,
+		/**
+		 * All tasks run in the order added, as determined by a global sequence number taken when
+		 * each task or batch is added. Costs a shared atomic increment per addition, which unlike
+		 * a compare-and-set never retries, and a priority queue on the primary thread. <br>
+		 * <br>
+		 * A task runs only once every task with an earlier sequence number has run. Thus a producer
+		 * which has taken its sequence number, but has yet to link its task into its stripe, holds
+		 * back the tasks added after it until it does so.
+		 */
+		GLOBAL
+
+	}
+
+	/**
+	 * Creates using the specified stripe count and ordering
+	 *
+	 * @param stripeCount the number of stripes, which is rounded up to the nearest power of two
+	 * @param ordering the ordering of tasks added by different producers
+	 * @throws IllegalArgumentException if the stripe count is not positive or greater than {@code 2^16}
+	 * @throws NullPointerException if the ordering is null
+	 */
+	public StripedTaskQueue(int stripeCount, Ordering ordering) {
+		if (stripeCount <= 0 || stripeCount > 1 << 16) {
+			throw new IllegalArgumentException("stripe count must be positive and not greater than 2^16");
+		}
+		int powerOfTwo = (stripeCount == 1) ? 1 : Integer.highestOneBit(stripeCount - 1) << 1;
+		stripes = new Stripe[powerOfTwo];
+		for (int n = 0; n < powerOfTwo; n++) {
+			stripes[n] = new Stripe();
+		}
+		mask = powerOfTwo - 1;
+		if (Objects.requireNonNull(ordering, "ordering") == Ordering.GLOBAL) {
+			sequence = new AtomicLong();
+			ready = new PriorityQueue<>(Comparator.comparingLong((node) -> node.sequence));
+		} else {
+			sequence = null;
+			ready = null;
+		}
+	}
+
+	/**
+	 * Creates with as many stripes as available processors, rounded up to a power of two,
+	 * using per-producer ordering
+	 *
+	 */
+	public StripedTaskQueue() {
+		this(Runtime.getRuntime().availableProcessors(), Ordering.PER_PRODUCER);
+	}
+
+	/**
+	 * Gets the number of stripes, which is a power of two
+	 *
+	 * @return the stripe count
+	 */
+	public int stripeCount() {
+		return stripes.length;
+	}
+
+	private Stripe currentStripe() {
+		int hash = System.identityHashCode(Thread.currentThread());
+		return stripes[(hash ^ (hash >>> 16)) & mask];
+	}
+
+	@Override
+	public boolean addTask(Runnable task) {
+		Node node = new Node(Objects.requireNonNull(task, "task"));
+		if (sequence != null) {
+			node.sequence = sequence.getAndIncrement();
+		}
+		currentStripe().append(node, node);
+		return true;
+	}
+
+	@Override
+	public int addTasks(Collection<? extends Runnable> tasks) {
+		/*
+		 * Copy and validate the batch first. Once sequence numbers are taken, the batch must
+		 * be linked, else the tasks after it would be held back forever
+		 */
+		Object[] batch = tasks.toArray();
+		int size = batch.length;
+		if (size == 0) {
+			return 0;
+		}
+		for (Object task : batch) {
+			Objects.requireNonNull(task, "task");
+		}
+		long nextSequence = (sequence == null) ? 0L : sequence.getAndAdd(size);
+		// Link the batch privately, then publish it with a single exchange
+		Node first = new Node((Runnable) batch[0]);
+		first.sequence = nextSequence++;
+		Node last = first;
+		for (int n = 1; n < size; n++) {
+			Node node = new Node((Runnable) batch[n]);
+			node.sequence = nextSequence++;
+			last.setNextPlain(node);
+			last = node;
+		}
+		currentStripe().append(first, last);
+		return size;
+	}
+
+	@Override
+	public boolean addCoalescedTask(Object key, Runnable task) {
+		return coalescer.addTo(this, key, task);
+	}
+
+	@Override
+	public boolean discardCoalescedTask(Object key) {
+		return coalescer.discard(key);
+	}
+
+	@Override
+	public boolean addedToEmptyQueue() {
+		// Nodes are linked with release stores, which may otherwise be reordered with the next load
+		VarHandle.fullFence();
+		return emptyQueueTracker.claimTransition();
+	}
+
+	/**
+	 * Marks the queue empty before draining. The fence orders the mark before reading the
+	 * stripes, which use acquire loads
+	 *
+	 */
+	private void beginDrain() {
+		emptyQueueTracker.beginDrain();
+		VarHandle.fullFence();
+	}
+
+	@Override
+	public void pollAndRunAll() {
+		beginDrain();
+		if (ready == null) {
+			for (Stripe stripe : stripes) {
+				Node node;
+				while ((node = stripe.poll()) != null) {
+					node.takeTask().run();
+				}
+			}
+			return;
+		}
+		Node node;
+		while ((node = transferAndPollReady()) != null) {
+			do {
+				node.takeTask().run();
+			} while ((node = pollReady()) != null);
+		}
+	}
+
+	/**
+	 * Moves the tasks in every stripe to the ready queue, then polls the next task in order
+	 *
+	 * @return the next task, or null if none is ready
+	 */
+	private Node transferAndPollReady() {
+		for (Stripe stripe : stripes) {
+			Node node;
+			while ((node = stripe.poll()) != null) {
+				ready.offer(node);
+			}
+		}
+		return pollReady();
+	}
+
+	/**
+	 * Polls the next task in order from the ready queue. A task is not ready while a task with an
+	 * earlier sequence number is missing, which means its producer has yet to link it. The producer
+	 * then signals, per {@link EmptyQueueTracker}, since the drain missed it.
+	 *
+	 * @return the next task, or null if none is ready
+	 */
+	private Node pollReady() {
+		Node node = ready.peek();
+		if (node == null || node.sequence != nextSequence) {
+			return null;
+		}
+		nextSequence++;
+		return ready.poll();
+	}
+
+	@Override
+	public boolean pollAndRun(DrainBounds bounds) {
+		if (bounds.isUnbounded()) {
+			pollAndRunAll();
+			return true;
+		}
+		beginDrain();
+		boolean timed = bounds.isTimeBounded();
+		long deadline = (timed) ? bounds.deadline() : 0L;
+		if (ready == null) {
+			return pollAndRunStripes(bounds.isSnapshot(), timed, deadline);
+		}
+		boolean snapshot = bounds.isSnapshot();
+		do {
+			Node node = transferAndPollReady();
+			if (node == null) {
+				return true;
+			}
+			do {
+				node.takeTask().run();
+				if (timed && Draining.deadlinePassed(deadline)) {
+					// Remaining tasks stay in the ready queue for the next drain
+					Node next = ready.peek();
+					return next == null || next.sequence != nextSequence;
+				}
+			} while ((node = pollReady()) != null);
+		} while (!snapshot);
+		return true;
+	}
+
+	private boolean pollAndRunStripes(boolean snapshot, boolean timed, long deadline) {
+		int stripeCount = stripes.length;
+		// Resume where the last drain ran out of time, so that every stripe gets its turn
+		int start = nextStripe;
+		for (int n = 0; n < stripeCount; n++) {
+			int index = (start + n) & mask;
+			Stripe stripe = stripes[index];
+			// In snapshot mode, stop after the last node present when the drain began
+			Node last = (snapshot) ? stripe.tail() : null;
+			if (last == stripe.head()) {
+				continue;
+			}
+			Node node;
+			while ((node = stripe.poll()) != null) {
+				node.takeTask().run();
+				if (timed && Draining.deadlinePassed(deadline)) {
+					nextStripe = (node == last) ? index + 1 : index;
+					return false;
+				}
+				if (node == last) {
+					break;
+				}
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "StripedTaskQueue{" +
+				"stripes=" + stripes.length +
+				", ordering=" + ((sequence == null) ? Ordering.PER_PRODUCER : Ordering.GLOBAL) +
+				'}';
+	}
+
+	private static final class Node {
+
+		private Runnable task;
+		long sequence;
+		private volatile Node next;
+
+		private static final VarHandle NEXT;
+
+		static {
+			try {
+				NEXT = MethodHandles.lookup().findVarHandle(Node.class, "next", Node.class);
+			} catch (NoSuchFieldException | IllegalAccessException ex) {
+				throw new ExceptionInInitializerError(ex);
+			}
+		}
+
+		Node(Runnable task) {
+			this.task = task;
+		}
+
+		Runnable takeTask() {
+			Runnable task = this.task;
+			// The node lives on as the stripe's stub, so release the task
+			this.task = null;
+			return task;
+		}
+
+		Node getNextAcquire() {
+			return (Node) NEXT.getAcquire(this);
+		}
+
+		void setNextPlain(Node next) {
+			NEXT.set(this, next);
+		}
+
+		void setNextRelease(Node next) {
+			NEXT.setRelease(this, next);
+		}
+	}
+
+	/*
+	 * Stripe tail padded on both sides to occupy its own cache line. Superclasses
+	 * are used for padding because field order within a class is not guaranteed.
+	 */
+
+	@SuppressWarnings("unused")
+	private static abstract class StripeLeftPadding {
+		long p01, p02, p03, p04, p05, p06, p07;
+	}
+
+	private static abstract class StripeTail extends StripeLeftPadding {
+		volatile Node tail;
+	}
+
+	@SuppressWarnings("unused")
+	private static abstract class StripeRightPadding extends StripeTail {
+		long p11, p12, p13, p14, p15, p16, p17;
+	}
+
+	/**
+	 * Linked multi-producer, single-consumer queue. Producers exchange the tail, then link the
+	 * previous tail to their nodes. The consumer follows the links from the last consumed node.
+	 * A producer between exchanging and linking briefly hides the nodes after it; the producer
+	 * then signals, per {@link EmptyQueueTracker}, if the drain missed them.
+	 *
+	 */
+	private static final class Stripe extends StripeRightPadding {
+
+		/** The last consumed node. Accessed by the consumer only */
+		private Node head;
+
+		private static final VarHandle TAIL;
+
+		static {
+			try {
+				TAIL = MethodHandles.lookup().findVarHandle(StripeTail.class, "tail", Node.class);
+			} catch (NoSuchFieldException | IllegalAccessException ex) {
+				throw new ExceptionInInitializerError(ex);
+			}
+		}
+
+		Stripe() {
+			Node stub = new Node(null);
+			head = stub;
+			tail = stub;
+		}
+
+		void append(Node first, Node last) {
+			Node previous = (Node) TAIL.getAndSet(this, last);
+			previous.setNextRelease(first);
+		}
+
+		Node poll() {
+			Node next = head.getNextAcquire();
+			if (next != null) {
+				head = next;
+			}
+			return next;
+		}
+
+		Node head() {
+			return head;
+		}
+
+		Node tail() {
+			return tail;
+		}
+	}
+}
@@ -0,0 +1,238 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * {@link Flow.Subscriber} which delivers items to the primary thread in batches. <br>
+ * <br>
+ * Items received from the publisher are buffered, and a single sync task is queued to drain
+ * the buffer, rather than one per item. The drain hands the buffered items to the batch
+ * consumer, in batches of at most the maximum batch size, then requests as many items as it
+ * delivered. Thus at most {@code bufferSize} items are outstanding at once, and the publisher
+ * proceeds only as fast as the primary thread drains. <br>
+ * <br>
+ * Each drain takes only the items present when it began. If more arrive meanwhile, another
+ * drain is queued behind the other sync tasks, so that a fast publisher cannot monopolise the
+ * primary thread. <br>
+ * <br>
+ * Completion and errors are delivered on the primary thread after the remaining items. If the
+ * batch consumer throws an exception, the subscription is cancelled and the exception is passed
+ * to the error handler.
+ *
+ * @param <T> the type of items
+ */
+public final class SyncBatchSubscriber<T> implements Flow.Subscriber<T> {
+
+	private final DeadlockFreeFutureFactory factory;
+	private final int bufferSize;
+	private final int maxBatchSize;
+	private final Consumer<? super List<T>> batchConsumer;
+	private final Runnable completionHandler;
+	private final Consumer<? super Throwable> errorHandler;
+
+	private volatile Flow.Subscription subscription;
+	private final Queue<Object> buffer = new ConcurrentLinkedQueue<>();
+	/** Items and terminal signals buffered but not yet drained */
+	private final AtomicInteger pending = new AtomicInteger();
+	/** Whether a terminal signal was delivered or the consumer failed. Accessed on the primary thread only */
+	private boolean done;
+
+	private static final Object COMPLETE = new Object();
+	private static final System.Logger logger = System.getLogger(SyncBatchSubscriber.class.getName());
+
+	/**
+	 * Creates an instance
+	 *
+	 * @param factory the factory whose primary thread receives the items
+	 * @param bufferSize the maximum number of items outstanding at once
+	 * @param maxBatchSize the maximum number of items in a single batch
+	 * @param batchConsumer the consumer of batches, called on the primary thread
+	 * @param completionHandler the handler of completion, called on the primary thread
+	 * @param errorHandler the handler of errors, called on the primary thread
+	 * @throws IllegalArgumentException if the buffer size or maximum batch size is not positive
+	 * @throws NullPointerException if any object parameter is null
+	 */
+	public SyncBatchSubscriber(DeadlockFreeFutureFactory factory, int bufferSize, int maxBatchSize,
+							   Consumer<? super List<T>> batchConsumer, Runnable completionHandler,
+							   Consumer<? super Throwable> errorHandler) {
+		this.factory = Objects.requireNonNull(factory, "factory");
+		if (bufferSize <= 0 || maxBatchSize <= 0) {
+			throw new IllegalArgumentException("buffer size and max batch size must be positive");
+		}
+		this.bufferSize = bufferSize;
+		this.maxBatchSize = maxBatchSize;
+		this.batchConsumer = Objects.requireNonNull(batchConsumer, "batchConsumer");
+		this.completionHandler = Objects.requireNonNull(completionHandler, "completionHandler");
+		this.errorHandler = Objects.requireNonNull(errorHandler, "errorHandler");
+	}
+
+	/**
+	 * Creates an instance whose batches may hold the whole buffer, which ignores completion
+	 * and logs errors
+	 *
+	 * @param factory the factory whose primary thread receives the items
+	 * @param bufferSize the maximum number of items outstanding at once
+	 * @param batchConsumer the consumer of batches, called on the primary thread
+	 * @throws IllegalArgumentException if the buffer size is not positive
+	 * @throws NullPointerException if any object parameter is null
+	 */
+	public SyncBatchSubscriber(DeadlockFreeFutureFactory factory, int bufferSize,
+							   Consumer<? super List<T>> batchConsumer) {
+		this(factory, bufferSize, bufferSize, batchConsumer, () -> {}, SyncBatchSubscriber::logError);
+	}
+
+	private static void logError(Throwable ex) {
+		logger.log(System.Logger.Level.WARNING, "Error in subscription", ex);
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		Objects.requireNonNull(subscription, "subscription");
+		if (this.subscription != null) {
+			// Rule 2.5: at most one active subscription
+			subscription.cancel();
+			return;
+		}
+		this.subscription = subscription;
+		subscription.request(bufferSize);
+	}
+
+	@Override
+	public void onNext(T item) {
+		enqueue(Objects.requireNonNull(item, "item"));
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		enqueue(new Failure(Objects.requireNonNull(throwable, "throwable")));
+	}
+
+	@Override
+	public void onComplete() {
+		enqueue(COMPLETE);
+	}
+
+	/**
+	 * Cancels the subscription. Items already buffered are discarded.
+	 *
+	 */
+	public void cancel() {
+		Flow.Subscription subscription = this.subscription;
+		if (subscription != null) {
+			subscription.cancel();
+		}
+		factory.executeSync(() -> done = true);
+	}
+
+	private void enqueue(Object signal) {
+		buffer.offer(signal);
+		if (pending.getAndIncrement() == 0) {
+			factory.executeSync(this::drain);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void drain() {
+		int count = pending.get();
+		int polled = 0;
+		try {
+			int delivered = 0;
+			List<T> batch = new ArrayList<>(Math.min(count, maxBatchSize));
+			while (polled < count) {
+				Object signal = buffer.poll();
+				polled++;
+				if (done) {
+					continue;
+				}
+				if (signal == COMPLETE || signal instanceof Failure) {
+					delivered += deliver(batch);
+					terminate(signal);
+					continue;
+				}
+				batch.add((T) signal);
+				if (batch.size() == maxBatchSize) {
+					delivered += deliver(batch);
+					batch = new ArrayList<>(Math.min(count - polled, maxBatchSize));
+				}
+			}
+			delivered += deliver(batch);
+			if (delivered > 0 && !done) {
+				subscription.request(delivered);
+			}
+		} finally {
+			// Also if a handler threw an Error, so that the remaining signals are still drained
+			if (pending.addAndGet(-polled) != 0) {
+				// Queue behind other sync tasks rather than draining again at once, even on the primary thread
+				factory.queueSync(this::drain);
+			}
+		}
+	}
+
+	private int deliver(List<T> batch) {
+		if (batch.isEmpty() || done) {
+			return 0;
+		}
+		try {
+			batchConsumer.accept(batch);
+		} catch (RuntimeException ex) {
+			done = true;
+			subscription.cancel();
+			errorHandler.accept(ex);
+			return 0;
+		}
+		return batch.size();
+	}
+
+	private void terminate(Object signal) {
+		done = true;
+		if (signal == COMPLETE) {
+			completionHandler.run();
+		} else {
+			errorHandler.accept(((Failure) signal).throwable);
+		}
+	}
+
+	private static final class Failure {
+
+		final Throwable throwable;
+
+		Failure(Throwable throwable) {
+			this.throwable = throwable;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "SyncBatchSubscriber{" +
+				"bufferSize=" + bufferSize +
+				", maxBatchSize=" + maxBatchSize +
+				", batchConsumer=" + batchConsumer +
+				'}';
+	}
+}
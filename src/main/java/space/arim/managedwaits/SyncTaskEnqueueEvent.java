@@ -0,0 +1,48 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("space.arim.managedwaits.SyncTaskEnqueue")
+@Label("Sync Task Enqueue")
+@Category("Managed Waits")
+@Description("Sync tasks added to the task queue from another thread")
+@Enabled(false)
+@StackTrace(false)
+final class SyncTaskEnqueueEvent extends Event {
+
+	@Label("Task Count")
+	int taskCount;
+
+	@Label("Priority")
+	String priority;
+
+	@Label("Signalled")
+	@Description("Whether the primary thread was signalled, which happens only if the queue was empty")
+	boolean signalled;
+
+}
@@ -0,0 +1,332 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import space.arim.omnibus.util.concurrent.CentralisedFuture;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+import static space.arim.managedwaits.Reporting.*;
+
+/**
+ * Implementation of {@code ManagedWaitStrategy} which parks the waiting thread and unparks
+ * it precisely when a task is added or a future is completed. <br>
+ * <br>
+ * Each managed wait publishes its own wakeup node, through which signals are delivered.
+ * A signal unparks the waiting thread only if the node shows it is parked, and otherwise
+ * merely sets a permit which prevents the next park. A signal is not unparked if the park
+ * has already ended on its own, by timeout or spuriously. When no managed wait is in progress,
+ * signalling costs a single volatile read and the main thread is never unparked. Thus,
+ * unlike {@link LightSleepManagedWaitStrategy}, other uses of {@link LockSupport} on the
+ * main thread are rarely disturbed by signals. A stray permit remains possible only if the
+ * park ends on its own at the very moment a signal unparks it, which is no different from
+ * the spurious wakeups that users of {@code LockSupport} must tolerate anyway. <br>
+ * <br>
+ * This strategy provides immediate wakeup without the locking overhead of
+ * {@link BlockingManagedWaitStrategy}.
+ */
+public final class TargetedUnparkManagedWaitStrategy implements ManagedWaitStrategy {
+
+	private volatile Waiter waiter;
+
+	static {
+		// Reduce the risk of lost unparks due to classloading - JDK-8074773
+		@SuppressWarnings("unused")
+		Class<?> ensureLoaded = LockSupport.class;
+	}
+
+	/**
+	 * Creates an instance
+	 *
+	 */
+	public TargetedUnparkManagedWaitStrategy() {}
+
+	@Override
+	public boolean requireSignalWhenFutureCompleted() {
+		return true;
+	}
+
+	@Override
+	public void signalWhenFutureCompleted(Thread mainThread) {
+		signal();
+	}
+
+	@Override
+	public void signalWhenTaskAdded(Thread mainThread) {
+		signal();
+	}
+
+	private void signal() {
+		Waiter waiter;
+		if ((waiter = this.waiter) != null) {
+			waiter.signal();
+		}
+	}
+
+	/**
+	 * Publishes a new wakeup node for the current thread
+	 *
+	 * @param node the new node
+	 * @return the previously published node, which must be restored after waiting
+	 */
+	private Waiter beginWait(Waiter node) {
+		Waiter previous = waiter;
+		waiter = node;
+		return previous;
+	}
+
+	private void endWait(Waiter previous) {
+		waiter = previous;
+		if (previous != null) {
+			/*
+			 * This was a nested wait. Signals received in the meantime went to the
+			 * inner node, so the outer wait must run queued tasks again before parking
+			 */
+			previous.signal();
+		}
+	}
+
+	@Override
+	public <T> T await(Runnable runQueuedTasks, CentralisedFuture<T> future) {
+		Waiter node = new Waiter(Thread.currentThread());
+		Waiter previous = beginWait(node);
+		boolean interrupted = false;
+		try {
+			for (;;) {
+				node.clearPermit();
+				runQueuedTasks.run();
+
+				T result;
+				if ((result = reportJoin(future)) != ABSENT_VALUE) {	// if (isDone()) {
+					return result;										// return super.join(); }
+				}
+				if (node.park(this, indefiniteOrLimit(runQueuedTasks)) && Thread.interrupted()) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			endWait(previous);
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	@Override
+	public <T> T awaitInterruptibly(Runnable runQueuedTasks, CentralisedFuture<T> future)
+			throws InterruptedException, ExecutionException {
+		Waiter node = new Waiter(Thread.currentThread());
+		Waiter previous = beginWait(node);
+		try {
+			for (;;) {
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+				node.clearPermit();
+				runQueuedTasks.run();
+
+				T result;
+				if ((result = reportGet(future)) != ABSENT_VALUE) {	// if (isDone()) {
+					return result;									// return super.get(); }
+				}
+				node.park(this, indefiniteOrLimit(runQueuedTasks));
+			}
+		} finally {
+			endWait(previous);
+		}
+	}
+
+	@Override
+	public <T> T awaitUntil(Runnable runQueuedTasks, CentralisedFuture<T> future, long timeout, TimeUnit unit)
+			throws InterruptedException, TimeoutException, ExecutionException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		Waiter node = new Waiter(Thread.currentThread());
+		Waiter previous = beginWait(node);
+		try {
+			for (;;) {
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+				node.clearPermit();
+				runQueuedTasks.run();
+
+				T result;
+				if ((result = reportGet(future)) != ABSENT_VALUE) {	// if (isDone()) {
+					return result;									// return super.get(); }
+				}
+				long delay = deadline - System.nanoTime();
+				if (delay <= 0) {
+					throw new TimeoutException();
+				}
+				node.park(this, Math.min(delay, TimedTaskRunner.parkLimit(runQueuedTasks)));
+			}
+		} finally {
+			endWait(previous);
+		}
+	}
+
+	/**
+	 * Gets the park time for an indefinite wait, which is bounded by the next scheduled sync task
+	 *
+	 * @param runQueuedTasks the runner of queued tasks
+	 * @return the park time, or 0 to park indefinitely
+	 */
+	private static long indefiniteOrLimit(Runnable runQueuedTasks) {
+		long parkLimit = TimedTaskRunner.parkLimit(runQueuedTasks);
+		return (parkLimit == Long.MAX_VALUE) ? 0L : parkLimit;
+	}
+
+	/**
+	 * Wakeup node for a single managed wait. <br>
+	 * <br>
+	 * Signals move the node to {@code SIGNALLED}. Only a node in the {@code PARKED} state
+	 * is unparked, in which case it passes through {@code UNPARKING} while the unpark is issued.
+	 * The unpark is skipped if the park has already returned.
+	 */
+	static final class Waiter {
+
+		private static final int IDLE = 0;
+		private static final int PARKED = 1;
+		private static final int UNPARKING = 2;
+		private static final int SIGNALLED = 3;
+
+		private final Thread thread;
+		private volatile int state;
+		/** Whether the last park has returned. Written by the waiting thread only */
+		private volatile boolean awake;
+
+		private static final VarHandle STATE;
+
+		static {
+			try {
+				STATE = MethodHandles.lookup().findVarHandle(Waiter.class, "state", int.class);
+			} catch (NoSuchFieldException | IllegalAccessException ex) {
+				throw new ExceptionInInitializerError(ex);
+			}
+		}
+
+		Waiter(Thread thread) {
+			this.thread = thread;
+		}
+
+		private boolean casState(int expect, int update) {
+			return STATE.compareAndSet(this, expect, update);
+		}
+
+		/**
+		 * Signals the waiting thread
+		 *
+		 * @return true if the waiting thread was unparked
+		 */
+		boolean signal() {
+			for (;;) {
+				int state = this.state;
+				switch (state) {
+				case IDLE:
+					if (casState(IDLE, SIGNALLED)) {
+						return false;
+					}
+					break;
+				case PARKED:
+					if (casState(PARKED, UNPARKING)) {
+						// Unparking a thread whose park has returned would leave a stray permit
+						boolean unpark = !awake;
+						if (unpark) {
+							LockSupport.unpark(thread);
+						}
+						this.state = SIGNALLED;
+						return unpark;
+					}
+					break;
+				default:
+					// Already signalled
+					return false;
+				}
+			}
+		}
+
+		/**
+		 * Clears the permit. Must be called before running queued tasks and checking
+		 * for completion, so that no signal issued afterward is lost.
+		 *
+		 */
+		void clearPermit() {
+			state = IDLE;
+		}
+
+		/**
+		 * Parks unless signalled since the permit was last cleared
+		 *
+		 * @param blocker the blocker object
+		 * @param nanos the maximum time to park, or 0 to park without a timeout
+		 * @return true if the thread did park, false if it was already signalled
+		 */
+		boolean park(Object blocker, long nanos) {
+			if (!beginPark()) {
+				return false;
+			}
+			if (nanos == 0L) {
+				LockSupport.park(blocker);
+			} else {
+				LockSupport.parkNanos(blocker, nanos);
+			}
+			endPark();
+			return true;
+		}
+
+		/**
+		 * Moves to the {@code PARKED} state before parking
+		 *
+		 * @return true if the thread may park, false if it was already signalled
+		 */
+		boolean beginPark() {
+			awake = false;
+			return casState(IDLE, PARKED);
+		}
+
+		/**
+		 * Marks the park as returned, so that signals no longer unpark the thread
+		 *
+		 */
+		void parkReturned() {
+			awake = true;
+		}
+
+		/**
+		 * Leaves the {@code PARKED} state after the park returns
+		 *
+		 */
+		void endPark() {
+			parkReturned();
+			if (!casState(PARKED, IDLE)) {
+				// A signaller has claimed the unpark. Ensure it is issued before the wait may end
+				while (state == UNPARKING) {
+					Thread.onSpinWait();
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coalesces keyed tasks on behalf of a task queue. <br>
+ * <br>
+ * The first task added for a key places a single entry in the queue, and the latest task for
+ * the key is held here. Later tasks for the same key replace the held task without touching
+ * the queue. When the entry runs, it takes the held task for its key, so that the next task
+ * for the key places a new entry.
+ *
+ */
+final class TaskCoalescer {
+
+	private final ConcurrentHashMap<Object, Runnable> pending = new ConcurrentHashMap<>();
+
+	/**
+	 * Implements {@link TaskQueue#addCoalescedTask(Object, Runnable)} for the given queue
+	 *
+	 * @param taskQueue the task queue to which entries are added
+	 * @param key the key
+	 * @param task the task
+	 * @return true if an entry was added to the queue, false if the task replaced a pending
+	 * task or the queue rejected the entry
+	 */
+	boolean addTo(TaskQueue taskQueue, Object key, Runnable task) {
+		Objects.requireNonNull(key, "key");
+		if (pending.put(key, Objects.requireNonNull(task, "task")) != null) {
+			// The pending entry will run this task in place of the replaced one
+			return false;
+		}
+		Runnable entryTask = task;
+		while (!taskQueue.addTask(new CoalescedEntry(key))) {
+			// The queue has already handled the failure. Discard the task so the key is not stuck
+			if (pending.remove(key, entryTask)) {
+				return false;
+			}
+			// Another producer replaced the task meanwhile, relying on this entry to run its task
+			entryTask = pending.get(key);
+			if (entryTask == null) {
+				// Discarded meanwhile
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Implements {@link TaskQueue#discardCoalescedTask(Object)}
+	 *
+	 * @param key the key
+	 * @return true if a pending task was discarded
+	 */
+	boolean discard(Object key) {
+		return pending.remove(Objects.requireNonNull(key, "key")) != null;
+	}
+
+	private final class CoalescedEntry implements Runnable {
+
+		private final Object key;
+
+		CoalescedEntry(Object key) {
+			this.key = key;
+		}
+
+		@Override
+		public void run() {
+			Runnable latest = pending.remove(key);
+			if (latest != null) {
+				latest.run();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "CoalescedEntry{key=" + key + ", task=" + pending.get(key) + '}';
+		}
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+/**
+ * Priority of a sync task. Task queues which do not support priorities treat all tasks alike.
+ *
+ */
+public enum TaskPriority {
+
+	/**
+	 * Latency critical tasks, such as continuations which the primary thread may be awaiting
+	 */
+	URGENT,
+	/**
+	 * Ordinary tasks. This is the priority of tasks submitted without a priority.
+	 */
+	NORMAL,
+	/**
+	 * Bulk or housekeeping tasks which may be delayed in favour of other tasks
+	 */
+	BACKGROUND
+
+}
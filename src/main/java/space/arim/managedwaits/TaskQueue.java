@@ -19,6 +19,8 @@
 
 package space.arim.managedwaits;
 
+import java.util.Collection;
+
 /**
  * A queue of tasks which may be emptied and run on demand
  *
@@ -34,6 +36,90 @@ public interface TaskQueue {
 	 */
 	boolean addTask(Runnable task);
 
+	/**
+	 * Adds a task to the queue with the given priority. <br>
+	 * <br>
+	 * The default implementation ignores the priority and calls {@link #addTask(Runnable)}.
+	 *
+	 * @param task the task
+	 * @param priority the priority of the task
+	 * @return true if added successfully, false if the operation somehow failed. See {@link #addTask(Runnable)}
+	 */
+	default boolean addTask(Runnable task, TaskPriority priority) {
+		return addTask(task);
+	}
+
+	/**
+	 * Adds a batch of tasks to the queue, in iteration order. Implementations should publish
+	 * the batch using as few queue operations as possible. <br>
+	 * <br>
+	 * The default implementation calls {@link #addTask(Runnable)} for each task.
+	 *
+	 * @param tasks the tasks
+	 * @return the number of tasks added successfully. As with {@code addTask}, the implementation
+	 * should handle failures itself; the return value is a mere indicator to the caller.
+	 */
+	default int addTasks(Collection<? extends Runnable> tasks) {
+		int added = 0;
+		for (Runnable task : tasks) {
+			if (addTask(task)) {
+				added++;
+			}
+		}
+		return added;
+	}
+
+	/**
+	 * Adds a task which supersedes any pending task added with the same key. While a task
+	 * for the key is pending, further tasks for the key replace it rather than being queued
+	 * again, so that only the latest task runs. The task runs at the position of the first
+	 * pending task for the key. <br>
+	 * <br>
+	 * Keys are compared using {@code equals} and {@code hashCode}. <br>
+	 * <br>
+	 * The default implementation does not coalesce and calls {@link #addTask(Runnable)}.
+	 *
+	 * @param key the key
+	 * @param task the task
+	 * @return true if a new entry was added to the queue, false if the task replaced a pending
+	 * task or the operation somehow failed. See {@link #addTask(Runnable)}
+	 */
+	default boolean addCoalescedTask(Object key, Runnable task) {
+		return addTask(task);
+	}
+
+	/**
+	 * Discards the pending task added with the given key, if any. Its entry stays in the queue
+	 * but runs nothing. Called on the primary thread before it runs a superseding task itself. <br>
+	 * <br>
+	 * The default implementation, which does not coalesce, discards nothing.
+	 *
+	 * @param key the key
+	 * @return true if a pending task was discarded
+	 */
+	default boolean discardCoalescedTask(Object key) {
+		return false;
+	}
+
+	/**
+	 * Determines whether the task or tasks just added made the queue non-empty where it
+	 * was empty. Called after each successful addition, by the adding thread. If this returns
+	 * false, the primary thread is not signalled for the addition, since it is already due to
+	 * run the queued tasks. <br>
+	 * <br>
+	 * Implementations should count the queue as empty from the moment draining begins, since
+	 * the drain takes every task present at that moment. A task added during a drain must
+	 * either be run by that drain or cause this method to return true. Returning true more
+	 * often than necessary is always safe. <br>
+	 * <br>
+	 * The default implementation always returns true, so that every addition is signalled.
+	 *
+	 * @return true if the queue transitioned from empty to non-empty
+	 */
+	default boolean addedToEmptyQueue() {
+		return true;
+	}
+
 	/**
 	 * Polls and runs any tasks in the queue. The implementation need not try-catch while calling
 	 * any {@code run} methods. <br>
@@ -43,4 +129,20 @@ public interface TaskQueue {
 	 *
 	 */
 	void pollAndRunAll();
+
+	/**
+	 * Polls and runs tasks in the queue, subject to the given bounds. Tasks which are not run
+	 * remain in the queue for the next drain. The same assumptions apply as with
+	 * {@link #pollAndRunAll()}. <br>
+	 * <br>
+	 * The default implementation ignores the bounds and calls {@code pollAndRunAll}.
+	 *
+	 * @param bounds the drain bounds
+	 * @return true if all tasks within the bounds were run, false if the time budget was
+	 * exhausted such that tasks may remain
+	 */
+	default boolean pollAndRun(DrainBounds bounds) {
+		pollAndRunAll();
+		return true;
+	}
 }
@@ -0,0 +1,48 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+/**
+ * A task which delegates to another, used to find the original task in diagnostics
+ *
+ */
+interface TaskWrapper {
+
+	/**
+	 * Gets the wrapped task
+	 *
+	 * @return the wrapped task
+	 */
+	Runnable wrapped();
+
+	/**
+	 * Finds the original task behind any number of wrappers
+	 *
+	 * @param task the task, possibly wrapped
+	 * @return the original task
+	 */
+	static Runnable unwrap(Runnable task) {
+		while (task instanceof TaskWrapper) {
+			task = ((TaskWrapper) task).wrapped();
+		}
+		return task;
+	}
+
+}
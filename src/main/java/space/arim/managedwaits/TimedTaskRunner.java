@@ -0,0 +1,50 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+/**
+ * Runner of queued tasks which also runs scheduled sync tasks. Managed wait strategies
+ * bound their parking by the next scheduled sync task, so that it runs on time even while
+ * the primary thread is inside a managed wait.
+ *
+ */
+interface TimedTaskRunner extends Runnable {
+
+	/**
+	 * Gets the time until the next scheduled sync task is due. Called on the primary thread.
+	 *
+	 * @return the time in nanoseconds, or {@code Long.MAX_VALUE} if no task is scheduled
+	 */
+	long nanosUntilNextTimer();
+
+	/**
+	 * Gets the maximum time a managed wait may park, given the runner of queued tasks
+	 *
+	 * @param runQueuedTasks the runner of queued tasks passed to the wait strategy
+	 * @return the positive time in nanoseconds, or {@code Long.MAX_VALUE} if unbounded
+	 */
+	static long parkLimit(Runnable runQueuedTasks) {
+		if (runQueuedTasks instanceof TimedTaskRunner) {
+			return Math.max(((TimedTaskRunner) runQueuedTasks).nanosUntilNextTimer(), 1L);
+		}
+		return Long.MAX_VALUE;
+	}
+
+}
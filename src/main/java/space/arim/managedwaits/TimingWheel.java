@@ -0,0 +1,269 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timing wheel of sync tasks, advanced by the primary thread. <br>
+ * <br>
+ * Any thread may schedule a task, which is handed to the primary thread through a concurrent
+ * queue. The wheel itself is accessed by the primary thread only. Each task is placed in the
+ * bucket of the tick at or after its deadline, so it never runs early, and runs on the first
+ * advance after its tick begins. Tasks whose deadline lies more than one revolution away
+ * share buckets with nearer tasks, and are skipped until their own tick. <br>
+ * <br>
+ * Cancelled tasks remain in their bucket until the tick of the bucket, when they are removed.
+ *
+ */
+final class TimingWheel {
+
+	private static final int WHEEL_SIZE = 512;
+	private static final int MASK = WHEEL_SIZE - 1;
+	private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1L);
+
+	private final long startTime = System.nanoTime();
+	private final Queue<Timer> pending = new ConcurrentLinkedQueue<>();
+	private final EmptyQueueTracker pendingTracker = new EmptyQueueTracker();
+
+	/*
+	 * Accessed by the primary thread only
+	 */
+	/** Allocated when the first task is scheduled */
+	private Timer[] buckets;
+	/** Every tick before this one has been expired */
+	private long currentTick;
+	private int size;
+	/** The earliest tick of any task, or Long.MAX_VALUE if not known */
+	private long nextExpiryTick = Long.MAX_VALUE;
+	private boolean nextExpiryStale;
+
+	/**
+	 * Schedules a task. May be called from any thread
+	 *
+	 * @param task the task
+	 * @param delayNanos the delay, in nanoseconds
+	 * @return the scheduled task
+	 */
+	ScheduledSyncTask schedule(Runnable task, long delayNanos) {
+		long deadline = System.nanoTime() + Math.max(delayNanos, 0L);
+		Timer timer = new Timer(task, deadline);
+		pending.offer(timer);
+		return timer;
+	}
+
+	/**
+	 * Claims the transition of the scheduling queue from empty to non-empty. See
+	 * {@link EmptyQueueTracker#claimTransition()}
+	 *
+	 * @return true if the primary thread must be signalled
+	 */
+	boolean scheduledToEmpty() {
+		return pendingTracker.claimTransition();
+	}
+
+	private long elapsedTick(long now) {
+		return (now - startTime) / TICK_NANOS;
+	}
+
+	private void transferPending() {
+		pendingTracker.beginDrain();
+		Timer timer;
+		while ((timer = pending.poll()) != null) {
+			if (timer.isCancelled()) {
+				continue;
+			}
+			if (buckets == null) {
+				buckets = new Timer[WHEEL_SIZE];
+			}
+			// Round up, so that the task never runs before its deadline
+			long tick = Math.max(-Math.floorDiv(startTime - timer.deadline, TICK_NANOS), currentTick);
+			timer.tick = tick;
+			int index = (int) (tick & MASK);
+			timer.next = buckets[index];
+			buckets[index] = timer;
+			size++;
+			if (!nextExpiryStale && tick < nextExpiryTick) {
+				nextExpiryTick = tick;
+			}
+		}
+	}
+
+	/**
+	 * Runs the tasks whose deadline has passed. Called on the primary thread. <br>
+	 * <br>
+	 * Expired tasks are unlinked before any of them runs, so that tasks may themselves
+	 * advance the wheel, as happens when they undertake a managed wait.
+	 *
+	 */
+	void runDueTasks() {
+		if (size == 0 && pending.isEmpty()) {
+			return;
+		}
+		transferPending();
+		long targetTick = elapsedTick(System.nanoTime());
+		if (targetTick < currentTick) {
+			return;
+		}
+		List<Timer> expired = null;
+		long ticks = Math.min(targetTick - currentTick + 1, WHEEL_SIZE);
+		for (long n = 0; n < ticks && size > 0; n++) {
+			int index = (int) ((currentTick + n) & MASK);
+			Timer previous = null;
+			Timer timer = buckets[index];
+			while (timer != null) {
+				Timer next = timer.next;
+				boolean cancelled = timer.isCancelled();
+				if (cancelled || timer.tick <= targetTick) {
+					// Unlink
+					if (previous == null) {
+						buckets[index] = next;
+					} else {
+						previous.next = next;
+					}
+					timer.next = null;
+					size--;
+					nextExpiryStale = true;
+					if (!cancelled) {
+						if (expired == null) {
+							expired = new ArrayList<>();
+						}
+						expired.add(timer);
+					}
+				} else {
+					previous = timer;
+				}
+				timer = next;
+			}
+		}
+		currentTick = targetTick + 1;
+		if (expired != null) {
+			for (Timer timer : expired) {
+				timer.runIfNotCancelled();
+			}
+		}
+	}
+
+	/**
+	 * Gets the time until the next task is due. Called on the primary thread
+	 *
+	 * @return the time in nanoseconds, or {@code Long.MAX_VALUE} if no task is scheduled
+	 */
+	long nanosUntilNextTask() {
+		if (!pending.isEmpty()) {
+			transferPending();
+		}
+		if (size == 0) {
+			return Long.MAX_VALUE;
+		}
+		if (nextExpiryStale) {
+			nextExpiryTick = findNextExpiryTick();
+			nextExpiryStale = false;
+		}
+		return startTime + nextExpiryTick * TICK_NANOS - System.nanoTime();
+	}
+
+	private long findNextExpiryTick() {
+		// Search one revolution for a task due in that revolution
+		for (long tick = currentTick; tick < currentTick + WHEEL_SIZE; tick++) {
+			for (Timer timer = buckets[(int) (tick & MASK)]; timer != null; timer = timer.next) {
+				if (timer.tick == tick) {
+					return tick;
+				}
+			}
+		}
+		// Every task is due in a later revolution
+		long earliest = Long.MAX_VALUE;
+		for (Timer head : buckets) {
+			for (Timer timer = head; timer != null; timer = timer.next) {
+				earliest = Math.min(earliest, timer.tick);
+			}
+		}
+		return earliest;
+	}
+
+	private static final class Timer implements ScheduledSyncTask {
+
+		private final Runnable task;
+		final long deadline;
+		/** The state. Transitions from SCHEDULED to either RUN or CANCELLED */
+		private volatile int state;
+
+		/*
+		 * Accessed by the primary thread only
+		 */
+		long tick;
+		Timer next;
+
+		private static final int SCHEDULED = 0;
+		private static final int RUN = 1;
+		private static final int CANCELLED = 2;
+
+		private static final VarHandle STATE;
+
+		static {
+			try {
+				STATE = MethodHandles.lookup().findVarHandle(Timer.class, "state", int.class);
+			} catch (NoSuchFieldException | IllegalAccessException ex) {
+				throw new ExceptionInInitializerError(ex);
+			}
+		}
+
+		Timer(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		void runIfNotCancelled() {
+			if (STATE.compareAndSet(this, SCHEDULED, RUN)) {
+				task.run();
+			}
+		}
+
+		@Override
+		public boolean cancel() {
+			return STATE.compareAndSet(this, SCHEDULED, CANCELLED);
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return state == CANCELLED;
+		}
+
+		@Override
+		public boolean isDone() {
+			return state != SCHEDULED;
+		}
+
+		@Override
+		public String toString() {
+			return "ScheduledSyncTask{" +
+					"task=" + task +
+					", state=" + state +
+					'}';
+		}
+	}
+}
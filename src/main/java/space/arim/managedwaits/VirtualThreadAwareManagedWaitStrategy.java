@@ -0,0 +1,123 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import space.arim.omnibus.util.concurrent.CentralisedFuture;
+
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Implementation of {@code ManagedWaitStrategy} suited to a primary thread which may be a
+ * virtual thread. <br>
+ * <br>
+ * Spinning and short sleeps are cheap for a platform thread, but for a virtual thread each
+ * park unmounts the thread from its carrier, and spinning occupies the carrier. Therefore,
+ * on a virtual thread, this strategy parks until precisely signalled, in the manner of
+ * {@link TargetedUnparkManagedWaitStrategy}. On a platform thread, it delegates to the given
+ * strategy. Signals are routed according to whether the primary thread is virtual. <br>
+ * <br>
+ * Before Java 21, no thread is virtual, and this strategy behaves as the delegate strategy
+ * except that it requires signalling when futures are completed.
+ */
+public final class VirtualThreadAwareManagedWaitStrategy implements ManagedWaitStrategy {
+
+	private final ManagedWaitStrategy platformStrategy;
+	private final boolean platformRequiresSignal;
+	private final TargetedUnparkManagedWaitStrategy virtualStrategy = new TargetedUnparkManagedWaitStrategy();
+
+	/**
+	 * Creates using the specified strategy for platform threads
+	 *
+	 * @param platformStrategy the strategy used when the primary thread is a platform thread
+	 * @throws NullPointerException if the strategy is null
+	 */
+	public VirtualThreadAwareManagedWaitStrategy(ManagedWaitStrategy platformStrategy) {
+		this.platformStrategy = Objects.requireNonNull(platformStrategy, "platformStrategy");
+		platformRequiresSignal = platformStrategy.requireSignalWhenFutureCompleted();
+	}
+
+	/**
+	 * Creates using {@link LightSleepManagedWaitStrategy} for platform threads
+	 *
+	 */
+	public VirtualThreadAwareManagedWaitStrategy() {
+		this(new LightSleepManagedWaitStrategy());
+	}
+
+	private static boolean isVirtual(Thread mainThread) {
+		return mainThread != null && VirtualThreads.isVirtual(mainThread);
+	}
+
+	@Override
+	public boolean requireSignalWhenFutureCompleted() {
+		// Whether the primary thread is virtual is not known in advance
+		return true;
+	}
+
+	@Override
+	public void signalWhenFutureCompleted(Thread mainThread) {
+		if (isVirtual(mainThread)) {
+			virtualStrategy.signalWhenFutureCompleted(mainThread);
+		} else if (platformRequiresSignal) {
+			platformStrategy.signalWhenFutureCompleted(mainThread);
+		}
+	}
+
+	@Override
+	public void signalWhenTaskAdded(Thread mainThread) {
+		if (isVirtual(mainThread)) {
+			virtualStrategy.signalWhenTaskAdded(mainThread);
+		} else {
+			platformStrategy.signalWhenTaskAdded(mainThread);
+		}
+	}
+
+	private ManagedWaitStrategy currentStrategy() {
+		return (VirtualThreads.isVirtual(Thread.currentThread())) ? virtualStrategy : platformStrategy;
+	}
+
+	@Override
+	public <T> T await(Runnable runQueuedTasks, CentralisedFuture<T> future) {
+		return currentStrategy().await(runQueuedTasks, future);
+	}
+
+	@Override
+	public <T> T awaitInterruptibly(Runnable runQueuedTasks, CentralisedFuture<T> future)
+			throws InterruptedException, ExecutionException {
+		return currentStrategy().awaitInterruptibly(runQueuedTasks, future);
+	}
+
+	@Override
+	public <T> T awaitUntil(Runnable runQueuedTasks, CentralisedFuture<T> future, long timeout, TimeUnit unit)
+			throws InterruptedException, TimeoutException, ExecutionException {
+		return currentStrategy().awaitUntil(runQueuedTasks, future, timeout, unit);
+	}
+
+	@Override
+	public String toString() {
+		return "VirtualThreadAwareManagedWaitStrategy{" +
+				"platformStrategy=" + platformStrategy +
+				'}';
+	}
+
+}
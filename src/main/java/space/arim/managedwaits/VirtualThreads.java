@@ -0,0 +1,41 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+/**
+ * Detection of virtual threads. Virtual threads do not exist before Java 21, where this
+ * class is replaced by its version in the multi-release layer.
+ *
+ */
+final class VirtualThreads {
+
+	private VirtualThreads() {}
+
+	/**
+	 * Whether the given thread is a virtual thread
+	 *
+	 * @param thread the thread
+	 * @return true if virtual, always false before Java 21
+	 */
+	static boolean isVirtual(Thread thread) {
+		return false;
+	}
+
+}
@@ -0,0 +1,207 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestTemplate;
+import org.junit.jupiter.api.extension.ExtendWith;
+import space.arim.omnibus.util.concurrent.CentralisedFuture;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(FactoryInvocationContextProvider.class)
+public class AwaitAllAnyTest {
+
+	@TestTemplate
+	public void awaitAllOnPrimaryThread(DeadlockFreeFutureFactory factory) {
+		int sum = factory.supplySync(() -> {
+			List<CentralisedFuture<Integer>> futures = new ArrayList<>();
+			for (int n = 0; n < 50; n++) {
+				int value = n;
+				// Alternate between sync tasks, which only the managed wait can run, and async tasks
+				futures.add((n % 2 == 0) ?
+						factory.supplyAsync(() -> factory.supplySync(() -> value).join())
+						: factory.supplyAsync(() -> value));
+			}
+			factory.awaitAll(futures);
+			int total = 0;
+			for (CentralisedFuture<Integer> future : futures) {
+				assertTrue(future.isDone());
+				total += future.getNow(null);
+			}
+			return total;
+		}).orTimeout(5L, TimeUnit.SECONDS).join();
+		assertEquals(49 * 50 / 2, sum);
+	}
+
+	@TestTemplate
+	public void awaitAllOffPrimaryThread(DeadlockFreeFutureFactory factory) {
+		List<CentralisedFuture<?>> futures = List.of(
+				factory.runSync(() -> {}), factory.runAsync(() -> {}), factory.completedFuture(null));
+		factory.awaitAll(futures);
+		factory.awaitAll(List.of());
+	}
+
+	@TestTemplate
+	public void awaitAllExceptionally(DeadlockFreeFutureFactory factory) {
+		IllegalStateException failure = new IllegalStateException("Expected");
+		CentralisedFuture<?> failed = factory.runAsync(() -> {
+			throw failure;
+		});
+		CentralisedFuture<?> slower = factory.runSync(() -> {});
+		CompletionException thrown = assertThrows(CompletionException.class, () -> {
+			factory.runSync(() -> factory.awaitAll(List.of(failed, slower)))
+					.orTimeout(5L, TimeUnit.SECONDS).join();
+		});
+		assertTrue(slower.isDone());
+		Throwable cause = thrown;
+		while (cause != null && cause != failure) {
+			cause = cause.getCause();
+		}
+		assertSame(failure, cause);
+	}
+
+	@TestTemplate
+	public void awaitAnyOnPrimaryThread(DeadlockFreeFutureFactory factory) {
+		String result = factory.supplySync(() -> {
+			CentralisedFuture<String> never = factory.newIncompleteFuture();
+			CentralisedFuture<String> eventually = factory.supplyAsync(() -> factory.supplySync(() -> "done").join());
+			return factory.awaitAny(List.of(never, eventually));
+		}).orTimeout(5L, TimeUnit.SECONDS).join();
+		assertEquals("done", result);
+	}
+
+	@TestTemplate
+	public void awaitAnyAlreadyComplete(DeadlockFreeFutureFactory factory) {
+		CentralisedFuture<String> never = factory.newIncompleteFuture();
+		assertEquals("now", factory.awaitAny(List.of(never, factory.completedFuture("now"))));
+		assertThrows(IllegalArgumentException.class, () -> factory.awaitAny(List.of()));
+	}
+
+	@Test
+	public void awaitAllSignalsOnce() throws Throwable {
+		CountingWaitStrategy waitStrategy = new CountingWaitStrategy();
+		FactoryImpl factory = FactoryImpl.create(new SimpleTaskQueue(), waitStrategy, false, DrainBounds.unbounded());
+		try {
+			List<CentralisedFuture<?>> futures = new ArrayList<>();
+			for (int n = 0; n < 10; n++) {
+				futures.add(factory.newIncompleteFuture());
+			}
+			CentralisedFuture<Integer> signalsDuringWait = factory.supplySync(() -> {
+				factory.awaitAll(futures);
+				return waitStrategy.futuresCompleted.get();
+			});
+			awaitParked(factory);
+			waitStrategy.futuresCompleted.set(0);
+			for (CentralisedFuture<?> future : futures) {
+				future.complete(null);
+			}
+			// Only the barrier signals
+			assertEquals(1, signalsDuringWait.orTimeout(5L, TimeUnit.SECONDS).join());
+		} finally {
+			factory.close();
+		}
+	}
+
+	@Test
+	public void signalRestoredWhenAwaitedIndividually() throws Throwable {
+		FactoryImpl factory = FactoryImpl.create(new SimpleTaskQueue(), new TargetedUnparkManagedWaitStrategy(),
+				false, DrainBounds.unbounded());
+		try {
+			CentralisedFuture<String> first = factory.newIncompleteFuture();
+			CentralisedFuture<String> second = factory.newIncompleteFuture();
+			AtomicBoolean awaitingFirst = new AtomicBoolean();
+			CentralisedFuture<String> awaited = factory.supplySync(() -> {
+				assertEquals("second", factory.awaitAny(List.of(first, second)));
+				awaitingFirst.set(true);
+				return first.join();
+			});
+			awaitParked(factory);
+			second.complete("second");
+			while (!awaitingFirst.get()) {
+				Thread.yield();
+			}
+			awaitParked(factory);
+			first.complete("first");
+			assertEquals("first", awaited.orTimeout(5L, TimeUnit.SECONDS).join());
+		} finally {
+			factory.close();
+		}
+	}
+
+	private static void awaitParked(DeadlockFreeFutureFactory factory) {
+		Thread primaryThread = factory.getPrimaryThread();
+		while (!(LockSupport.getBlocker(primaryThread) instanceof TargetedUnparkManagedWaitStrategy)) {
+			Thread.yield();
+		}
+	}
+
+	private static final class CountingWaitStrategy implements ManagedWaitStrategy {
+
+		private final ManagedWaitStrategy delegate = new TargetedUnparkManagedWaitStrategy();
+		final AtomicInteger futuresCompleted = new AtomicInteger();
+
+		@Override
+		public boolean requireSignalWhenFutureCompleted() {
+			return true;
+		}
+
+		@Override
+		public void signalWhenFutureCompleted(Thread mainThread) {
+			futuresCompleted.incrementAndGet();
+			delegate.signalWhenFutureCompleted(mainThread);
+		}
+
+		@Override
+		public void signalWhenTaskAdded(Thread mainThread) {
+			delegate.signalWhenTaskAdded(mainThread);
+		}
+
+		@Override
+		public <T> T await(Runnable runQueuedTasks, CentralisedFuture<T> future) {
+			return delegate.await(runQueuedTasks, future);
+		}
+
+		@Override
+		public <T> T awaitInterruptibly(Runnable runQueuedTasks, CentralisedFuture<T> future)
+				throws InterruptedException, ExecutionException {
+			return delegate.awaitInterruptibly(runQueuedTasks, future);
+		}
+
+		@Override
+		public <T> T awaitUntil(Runnable runQueuedTasks, CentralisedFuture<T> future, long timeout, TimeUnit unit)
+				throws InterruptedException, TimeoutException, ExecutionException {
+			return delegate.awaitUntil(runQueuedTasks, future, timeout, unit);
+		}
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestTemplate;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import space.arim.omnibus.util.concurrent.CentralisedFuture;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CoalescedTaskTest {
+
+	public static Object[] taskQueues() {
+		return TaskQueueDrainBoundsTest.taskQueues().toArray();
+	}
+
+	@ParameterizedTest
+	@MethodSource("taskQueues")
+	public void latestTaskRunsOnce(TaskQueue taskQueue) {
+		List<String> ran = new ArrayList<>();
+		assertTrue(taskQueue.addCoalescedTask("a", () -> ran.add("a1")));
+		assertTrue(taskQueue.addTask(() -> ran.add("plain")));
+		assertFalse(taskQueue.addCoalescedTask("a", () -> ran.add("a2")));
+		assertTrue(taskQueue.addCoalescedTask("b", () -> ran.add("b1")));
+		assertFalse(taskQueue.addCoalescedTask("a", () -> ran.add("a3")));
+		taskQueue.pollAndRunAll();
+		assertEquals(List.of("a3", "plain", "b1"), ran);
+
+		// The key is free again once its task has run
+		assertTrue(taskQueue.addCoalescedTask("a", () -> ran.add("a4")));
+		taskQueue.pollAndRunAll();
+		assertEquals(List.of("a3", "plain", "b1", "a4"), ran);
+	}
+
+	@ParameterizedTest
+	@MethodSource("taskQueues")
+	public void addedDuringDrainRunsAgain(TaskQueue taskQueue) {
+		List<Integer> ran = new ArrayList<>();
+		taskQueue.addCoalescedTask("key", () -> {
+			ran.add(0);
+			taskQueue.addCoalescedTask("key", () -> ran.add(1));
+		});
+		taskQueue.pollAndRun(DrainBounds.snapshot());
+		assertEquals(List.of(0), ran);
+		taskQueue.pollAndRunAll();
+		assertEquals(List.of(0, 1), ran);
+	}
+
+	@Test
+	public void rejectedTaskFreesKey() {
+		TaskQueue taskQueue = new RingBufferTaskQueue(1, RingBufferTaskQueue.FullQueuePolicy.REJECT);
+		List<Integer> ran = new ArrayList<>();
+		assertTrue(taskQueue.addTask(() -> ran.add(0)));
+		assertFalse(taskQueue.addCoalescedTask("key", () -> ran.add(1)));
+		taskQueue.pollAndRunAll();
+		assertTrue(taskQueue.addCoalescedTask("key", () -> ran.add(2)));
+		taskQueue.pollAndRunAll();
+		assertEquals(List.of(0, 2), ran);
+	}
+
+	@TestTemplate
+	@ExtendWith(FactoryInvocationContextProvider.class)
+	public void coalesceFromOtherThread(DeadlockFreeFutureFactory factory) {
+		int[] result = factory.supplySync(() -> {
+			int[] runsAndLast = new int[2];
+			// Block the primary thread without draining, so every update is pending at once
+			CompletableFuture.runAsync(() -> {
+				for (int n = 1; n <= 100; n++) {
+					int value = n;
+					factory.executeSyncCoalesced("entity", () -> {
+						runsAndLast[0]++;
+						runsAndLast[1] = value;
+					});
+				}
+			}).join();
+			CentralisedFuture<?> drained = factory.newIncompleteFuture();
+			factory.runAsync(() -> factory.executeSync(() -> drained.complete(null)));
+			drained.join();
+			return runsAndLast;
+		}).orTimeout(5L, TimeUnit.SECONDS).join();
+		assertEquals(1, result[0]);
+		assertEquals(100, result[1]);
+	}
+
+	@Test
+	public void replacedWhileRejected() {
+		TaskCoalescer coalescer = new TaskCoalescer();
+		List<Runnable> entries = new ArrayList<>();
+		List<String> ran = new ArrayList<>();
+		TaskQueue taskQueue = new TaskQueue() {
+
+			private boolean rejected;
+
+			@Override
+			public boolean addTask(Runnable task) {
+				if (!rejected) {
+					rejected = true;
+					// Another producer replaces the pending task while its entry is being rejected
+					assertFalse(coalescer.addTo(this, "key", () -> ran.add("replacement")));
+					return false;
+				}
+				return entries.add(task);
+			}
+
+			@Override
+			public void pollAndRunAll() {
+				entries.forEach(Runnable::run);
+				entries.clear();
+			}
+		};
+		assertTrue(coalescer.addTo(taskQueue, "key", () -> ran.add("original")));
+		taskQueue.pollAndRunAll();
+		assertEquals(List.of("replacement"), ran);
+	}
+
+	@TestTemplate
+	@ExtendWith(FactoryInvocationContextProvider.class)
+	public void runInPlaceOnPrimaryThread(DeadlockFreeFutureFactory factory) {
+		List<Integer> ran = factory.supplySync(() -> {
+			List<Integer> values = new ArrayList<>();
+			CompletableFuture.runAsync(() -> factory.executeSyncCoalesced("entity", () -> values.add(1))).join();
+			// Supersedes the pending task
+			factory.executeSyncCoalesced("entity", () -> values.add(2));
+			assertEquals(List.of(2), values);
+			CentralisedFuture<?> drained = factory.newIncompleteFuture();
+			factory.runAsync(() -> factory.executeSync(() -> drained.complete(null)));
+			drained.join();
+			return values;
+		}).orTimeout(5L, TimeUnit.SECONDS).join();
+		assertEquals(List.of(2), ran);
+	}
+
+	@Test
+	public void primaryThreadWithFullWaitingQueue() throws Throwable {
+		FactoryImpl factory = FactoryImpl.create(new RingBufferTaskQueue(2, RingBufferTaskQueue.FullQueuePolicy.WAIT),
+				new TargetedUnparkManagedWaitStrategy(), false, DrainBounds.unbounded());
+		try {
+			List<Integer> ran = factory.supplySync(() -> {
+				List<Integer> values = new ArrayList<>();
+				// Fill the ring from another thread while the primary thread does not drain
+				CompletableFuture.runAsync(() -> {
+					factory.executeSync(() -> values.add(1));
+					factory.executeSync(() -> values.add(2));
+				}).join();
+				factory.executeSyncCoalesced("entity", () -> values.add(3));
+				return List.copyOf(values);
+			}).orTimeout(5L, TimeUnit.SECONDS).join();
+			assertEquals(List.of(3), ran);
+		} finally {
+			factory.close();
+		}
+	}
+
+}
@@ -0,0 +1,136 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.arim.omnibus.util.concurrent.CentralisedFuture;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CompletionSignalTest {
+
+	private final CountingWaitStrategy waitStrategy = new CountingWaitStrategy();
+	private FactoryImpl factory;
+
+	@BeforeEach
+	public void setup() {
+		factory = FactoryImpl.create(new SimpleTaskQueue(), waitStrategy, false, DrainBounds.unbounded());
+	}
+
+	@AfterEach
+	public void tearDown() throws Throwable {
+		factory.close();
+	}
+
+	@Test
+	public void explicitCompletionSignals() {
+		CentralisedFuture<String> future = factory.newIncompleteFuture();
+		future.complete("value");
+		assertEquals(1, waitStrategy.futureSignals.get());
+		future.complete("again");
+		assertEquals(1, waitStrategy.futureSignals.get(), "Already completed");
+	}
+
+	@Test
+	public void dependentStagesSignalOnlyIfAwaited() {
+		CentralisedFuture<String> future = factory.newIncompleteFuture();
+		CompletableFuture<Integer> dependent = future.thenApply(String::length).thenApply((length) -> length + 1);
+		future.complete("value");
+		assertEquals(1, waitStrategy.futureSignals.get());
+		assertEquals(6, dependent.join());
+	}
+
+	@Test
+	public void awaitedDependentStageSignals() {
+		CentralisedFuture<String> future = factory.newIncompleteFuture();
+		int length = factory.supplySync(() -> {
+			CompletableFuture<Integer> dependent = future.thenApplyAsync(String::length);
+			factory.runAsync(() -> future.complete("value"));
+			return dependent.join();
+		}).orTimeout(5L, TimeUnit.SECONDS).join();
+		assertEquals(5, length);
+	}
+
+	@Test
+	public void repeatedTimedWaitsRegisterOnce() {
+		CentralisedFuture<String> future = factory.newIncompleteFuture();
+		CompletableFuture<Integer> dependent = future.thenApply(String::length);
+		int dependents = factory.supplySync(() -> {
+			for (int n = 0; n < 10; n++) {
+				assertThrows(TimeoutException.class, () -> dependent.get(1L, TimeUnit.MILLISECONDS));
+			}
+			return dependent.getNumberOfDependents();
+		}).orTimeout(5L, TimeUnit.SECONDS).join();
+		assertEquals(1, dependents);
+		int signalsBefore = waitStrategy.futureSignals.get();
+		future.complete("value");
+		// One signal for the future itself, and one for the awaited dependent stage
+		assertEquals(signalsBefore + 2, waitStrategy.futureSignals.get());
+	}
+
+	private static final class CountingWaitStrategy implements ManagedWaitStrategy {
+
+		private final ManagedWaitStrategy delegate = new TargetedUnparkManagedWaitStrategy();
+		final AtomicInteger futureSignals = new AtomicInteger();
+
+		@Override
+		public boolean requireSignalWhenFutureCompleted() {
+			return true;
+		}
+
+		@Override
+		public void signalWhenFutureCompleted(Thread mainThread) {
+			futureSignals.incrementAndGet();
+			delegate.signalWhenFutureCompleted(mainThread);
+		}
+
+		@Override
+		public void signalWhenTaskAdded(Thread mainThread) {
+			delegate.signalWhenTaskAdded(mainThread);
+		}
+
+		@Override
+		public <T> T await(Runnable runQueuedTasks, CentralisedFuture<T> future) {
+			return delegate.await(runQueuedTasks, future);
+		}
+
+		@Override
+		public <T> T awaitInterruptibly(Runnable runQueuedTasks, CentralisedFuture<T> future)
+				throws InterruptedException, ExecutionException {
+			return delegate.awaitInterruptibly(runQueuedTasks, future);
+		}
+
+		@Override
+		public <T> T awaitUntil(Runnable runQueuedTasks, CentralisedFuture<T> future, long timeout, TimeUnit unit)
+				throws InterruptedException, TimeoutException, ExecutionException {
+			return delegate.awaitUntil(runQueuedTasks, future, timeout, unit);
+		}
+	}
+
+}
@@ -6,8 +6,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import space.arim.omnibus.util.concurrent.FactoryOfTheFuture;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
 @ExtendWith(FactoryInvocationContextProvider.class)
 public class DeadlockFreeFutureFactorySimpleUsageTest {
 
@@ -36,4 +40,24 @@ public class DeadlockFreeFutureFactorySimpleUsageTest {
 		logger.debug("Finished Chain 3");
 	}
 
+	@TestTemplate
+	public void batchSync(DeadlockFreeFutureFactory factory) {
+		List<Integer> ran = new ArrayList<>();
+		List<Runnable> batch = new ArrayList<>();
+		for (int n = 0; n < 100; n++) {
+			int value = n;
+			batch.add(() -> ran.add(value));
+		}
+		factory.runAsync(() -> factory.executeSyncAll(batch))
+				.thenRunSync(() -> logger.trace("Batch submitted"))
+				.orTimeout(1L, TimeUnit.SECONDS).join();
+		factory.runSync(() -> {
+			assertEquals(100, ran.size());
+			for (int n = 0; n < 100; n++) {
+				assertEquals(n, ran.get(n));
+			}
+		}).orTimeout(1L, TimeUnit.SECONDS).join();
+		logger.trace("Finished batch");
+	}
+
 }
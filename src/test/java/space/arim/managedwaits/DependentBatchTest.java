@@ -0,0 +1,235 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.arim.omnibus.util.concurrent.CentralisedFuture;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DependentBatchTest {
+
+	private final CountingTaskQueue taskQueue = new CountingTaskQueue();
+	private FactoryImpl factory;
+
+	@BeforeEach
+	public void setup() {
+		factory = FactoryImpl.create(taskQueue, new TargetedUnparkManagedWaitStrategy(), false, DrainBounds.unbounded());
+	}
+
+	@AfterEach
+	public void tearDown() throws Throwable {
+		factory.close();
+	}
+
+	@Test
+	public void dependentsQueuedOnce() {
+		CentralisedFuture<Integer> future = factory.newIncompleteFuture();
+		List<Integer> ran = new ArrayList<>();
+		List<CompletableFuture<?>> dependents = new ArrayList<>();
+		for (int n = 0; n < 20; n++) {
+			int value = n;
+			dependents.add(future.thenAcceptSync((result) -> ran.add(result + value)));
+		}
+		future.complete(100);
+		assertEquals(1, taskQueue.added.get());
+
+		CompletableFuture.allOf(dependents.toArray(CompletableFuture[]::new)).orTimeout(5L, TimeUnit.SECONDS).join();
+		assertEquals(20, ran.size());
+		// Dependents fire in reverse order of registration, as with CompletableFuture
+		for (int n = 0; n < 20; n++) {
+			assertEquals(119 - n, ran.get(n));
+		}
+	}
+
+	@Test
+	public void dependentsOfDependentStagesQueuedOnce() {
+		CentralisedFuture<Integer> future = factory.newIncompleteFuture();
+		AtomicInteger ran = new AtomicInteger();
+		CentralisedFuture<Integer> stage = (CentralisedFuture<Integer>) future.thenApply((result) -> result + 1);
+		CompletableFuture<?> first = stage.thenRunSync(ran::incrementAndGet);
+		CompletableFuture<?> second = future.thenRunSync(ran::incrementAndGet);
+		future.complete(1);
+		assertEquals(1, taskQueue.added.get());
+
+		CompletableFuture.allOf(first, second).orTimeout(5L, TimeUnit.SECONDS).join();
+		assertEquals(2, ran.get());
+	}
+
+	@Test
+	public void blockingDependentReleasesBatch() {
+		CentralisedFuture<Integer> future = factory.newIncompleteFuture();
+		@SuppressWarnings("unchecked")
+		CompletableFuture<Integer>[] syncStage = new CompletableFuture[1];
+		// Registered first, so fired after the sync dependent, which it then waits on
+		CompletableFuture<Integer> blocking = future.thenApply((ignore) -> syncStage[0].join());
+		syncStage[0] = future.thenApplySync((result) -> result * 2);
+		CompletableFuture.runAsync(() -> future.complete(3));
+		assertEquals(6, blocking.orTimeout(5L, TimeUnit.SECONDS).join());
+	}
+
+	@Test
+	public void dependentBlockingOnLatchDoesNotDeadlock() {
+		CentralisedFuture<Integer> future = factory.newIncompleteFuture();
+		CountDownLatch latch = new CountDownLatch(1);
+		// Registered first, so fired after the sync dependent, which releases the latch
+		CompletableFuture<Boolean> blocking = future.thenApply((ignore) -> {
+			try {
+				return latch.await(5L, TimeUnit.SECONDS);
+			} catch (InterruptedException ex) {
+				throw new AssertionError(ex);
+			}
+		});
+		future.thenRunSync(latch::countDown);
+		CompletableFuture.runAsync(() -> future.complete(1));
+		assertTrue(blocking.orTimeout(10L, TimeUnit.SECONDS).join());
+	}
+
+	@Test
+	public void dependentJoiningForeignFutureDoesNotDeadlock() {
+		CentralisedFuture<Integer> future = factory.newIncompleteFuture();
+		CompletableFuture<Integer> foreign = new CompletableFuture<>();
+		CompletableFuture<Integer> blocking = future.thenApply((ignore) -> foreign.orTimeout(5L, TimeUnit.SECONDS).join());
+		future.thenAcceptSync((result) -> foreign.complete(result * 2));
+		CompletableFuture.runAsync(() -> future.complete(3));
+		assertEquals(6, blocking.orTimeout(10L, TimeUnit.SECONDS).join());
+	}
+
+	@Test
+	public void dependentsFiredWhileBatchRunsAreRun() {
+		CentralisedFuture<Integer> future = factory.newIncompleteFuture();
+		CountDownLatch latch = new CountDownLatch(1);
+		AtomicInteger ran = new AtomicInteger();
+		// Fired last, while or after the batch holding the first sync dependent runs
+		CompletableFuture<?> late = future.thenRunSync(ran::incrementAndGet);
+		future.thenRun(() -> {
+			try {
+				latch.await(5L, TimeUnit.SECONDS);
+			} catch (InterruptedException ex) {
+				throw new AssertionError(ex);
+			}
+		});
+		CompletableFuture<?> early = future.thenRunSync(() -> {
+			ran.incrementAndGet();
+			latch.countDown();
+		});
+		CompletableFuture.runAsync(() -> future.complete(1));
+		CompletableFuture.allOf(early, late).orTimeout(10L, TimeUnit.SECONDS).join();
+		assertEquals(2, ran.get());
+	}
+
+	@Test
+	public void completeOnPrimaryThreadRunsImmediately() {
+		List<String> ran = factory.supplySync(() -> {
+			int addedBefore = taskQueue.added.get();
+			CentralisedFuture<Integer> future = factory.newIncompleteFuture();
+			List<String> values = new ArrayList<>();
+			future.thenRunSync(() -> values.add("first"));
+			future.thenRunSync(() -> values.add("second"));
+			future.complete(1);
+			assertEquals(addedBefore, taskQueue.added.get());
+			return values;
+		}).orTimeout(5L, TimeUnit.SECONDS).join();
+		assertEquals(List.of("second", "first"), ran);
+	}
+
+	@Test
+	public void throwingDependentDoesNotLoseLaterDependents() {
+		TaskQueue queue = new SimpleTaskQueue();
+		// Never started, so that the queue is drained only by this test
+		Thread primaryThread = new Thread(() -> {});
+		DeadlockFreeFutureFactory factory = new DeadlockFreeFutureFactory(queue, new TargetedUnparkManagedWaitStrategy()) {
+
+			@Override
+			public boolean isPrimaryThread() {
+				return Thread.currentThread() == primaryThread;
+			}
+
+			@Override
+			public Thread getPrimaryThread() {
+				return primaryThread;
+			}
+		};
+		List<String> ran = new ArrayList<>();
+		DeadlockFreeFutureFactory.DependentBatch batch = factory.beginDependentBatch();
+		try {
+			factory.trustedSyncExecutor.executeSync(() -> ran.add("first"));
+			factory.trustedSyncExecutor.executeSync(() -> {
+				throw new IllegalStateException("dependent");
+			});
+			factory.trustedSyncExecutor.executeSync(() -> ran.add("third"));
+			assertThrows(IllegalStateException.class, queue::pollAndRunAll);
+			assertEquals(List.of("first"), ran);
+
+			// Appended to the remaining dependents, which are queued again
+			factory.trustedSyncExecutor.executeSync(() -> ran.add("fourth"));
+			queue.pollAndRunAll();
+			assertEquals(List.of("first", "third", "fourth"), ran);
+
+			// The batch is closed, so a new batch is queued
+			factory.trustedSyncExecutor.executeSync(() -> ran.add("fifth"));
+			queue.pollAndRunAll();
+			assertEquals(List.of("first", "third", "fourth", "fifth"), ran);
+		} finally {
+			factory.endDependentBatch(batch);
+		}
+	}
+
+	private static final class CountingTaskQueue implements TaskQueue {
+
+		private final TaskQueue delegate = new SimpleTaskQueue();
+		final AtomicInteger added = new AtomicInteger();
+
+		@Override
+		public boolean addTask(Runnable task) {
+			added.incrementAndGet();
+			return delegate.addTask(task);
+		}
+
+		@Override
+		public int addTasks(Collection<? extends Runnable> tasks) {
+			added.addAndGet(tasks.size());
+			return delegate.addTasks(tasks);
+		}
+
+		@Override
+		public boolean addedToEmptyQueue() {
+			return delegate.addedToEmptyQueue();
+		}
+
+		@Override
+		public void pollAndRunAll() {
+			delegate.pollAndRunAll();
+		}
+	}
+
+}
@@ -0,0 +1,191 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import space.arim.omnibus.util.concurrent.CentralisedFuture;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EventLoopFutureFactoryTest {
+
+	private EventLoopFutureFactory factory;
+
+	@AfterEach
+	public void tearDown() throws InterruptedException {
+		factory.close();
+		assertTrue(factory.awaitTermination(1L, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void wakeImmediatelyWhenTaskAdded() {
+		factory = new EventLoopFutureFactory(new SimpleTaskQueue(), new TargetedUnparkManagedWaitStrategy(),
+				Thread::new, 1L, TimeUnit.HOURS, () -> {}, () -> {});
+		factory.start();
+		for (int n = 0; n < 10; n++) {
+			long start = System.nanoTime();
+			factory.runSync(() -> {}).orTimeout(5L, TimeUnit.SECONDS).join();
+			long elapsed = System.nanoTime() - start;
+			assertTrue(elapsed < TimeUnit.MILLISECONDS.toNanos(500L), "Took " + elapsed + "ns");
+		}
+	}
+
+	@Test
+	public void managedWaitOnOwnedThread() {
+		factory = new EventLoopFutureFactory(new SimpleTaskQueue(), new LightSleepManagedWaitStrategy(), Thread::new);
+		factory.start();
+		int result = factory.supplySync(() -> {
+			return factory.supplyAsync(() -> factory.supplySync(() -> 3).join()).join();
+		}).orTimeout(5L, TimeUnit.SECONDS).join();
+		assertEquals(3, result);
+	}
+
+	@Test
+	public void tickHooks() throws InterruptedException {
+		List<String> events = new CopyOnWriteArrayList<>();
+		CountDownLatch ticks = new CountDownLatch(3);
+		factory = new EventLoopFutureFactory(new SimpleTaskQueue(), new TargetedUnparkManagedWaitStrategy(),
+				Thread::new, 10L, TimeUnit.MILLISECONDS, () -> events.add("pre"), () -> {
+					events.add("post");
+					ticks.countDown();
+				});
+		factory.start();
+		assertTrue(ticks.await(5L, TimeUnit.SECONDS));
+		assertEquals(List.of("pre", "post", "pre", "post"), events.subList(0, 4));
+	}
+
+	@Test
+	public void hookExceptionDoesNotStopLoop() throws InterruptedException {
+		AtomicInteger ticks = new AtomicInteger();
+		factory = new EventLoopFutureFactory(new SimpleTaskQueue(), new TargetedUnparkManagedWaitStrategy(),
+				Thread::new, 5L, TimeUnit.MILLISECONDS, () -> {
+					ticks.incrementAndGet();
+					throw new IllegalStateException("Expected");
+				}, () -> {});
+		factory.start();
+		CentralisedFuture<?> future = factory.runSync(() -> {});
+		future.orTimeout(5L, TimeUnit.SECONDS).join();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+		while (ticks.get() < 2 && System.nanoTime() < deadline) {
+			Thread.sleep(5L);
+		}
+		assertTrue(ticks.get() >= 2);
+	}
+
+	@Test
+	public void scheduledTaskWhileIdle() {
+		factory = new EventLoopFutureFactory(new SimpleTaskQueue(), new TargetedUnparkManagedWaitStrategy(), Thread::new);
+		factory.start();
+		CentralisedFuture<Long> future = factory.newIncompleteFuture();
+		long start = System.nanoTime();
+		factory.scheduleSync(() -> future.complete(System.nanoTime()), 30L, TimeUnit.MILLISECONDS);
+		long elapsed = future.orTimeout(5L, TimeUnit.SECONDS).join() - start;
+		assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(30L), "Ran early after " + elapsed + "ns");
+	}
+
+	@Test
+	public void startTwice() {
+		factory = new EventLoopFutureFactory(new SimpleTaskQueue(), new TargetedUnparkManagedWaitStrategy(), Thread::new);
+		factory.start();
+		assertThrows(IllegalStateException.class, factory::start);
+	}
+
+	@Test
+	public void skipMissedTicks() throws InterruptedException {
+		List<Long> tickStarts = new CopyOnWriteArrayList<>();
+		CountDownLatch ticksAfterPause = new CountDownLatch(3);
+		factory = new EventLoopFutureFactory(new SimpleTaskQueue(), new TargetedUnparkManagedWaitStrategy(),
+				Thread::new, 10L, TimeUnit.MILLISECONDS, () -> tickStarts.add(System.nanoTime()), () -> {
+					if (tickStarts.size() == 1) {
+						// Miss about 20 ticks
+						LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(200L));
+					} else {
+						ticksAfterPause.countDown();
+					}
+				});
+		factory.start();
+		assertTrue(ticksAfterPause.await(5L, TimeUnit.SECONDS));
+		// One tick follows the overrun at once, after which ticks resume at the tick period
+		long secondTick = tickStarts.get(1);
+		long fourthTick = tickStarts.get(3);
+		assertTrue(fourthTick - secondTick >= TimeUnit.MILLISECONDS.toNanos(15L),
+				"Missed ticks were run back-to-back");
+	}
+
+	@Test
+	public void noUnparkWhileRunningTask() {
+		factory = new EventLoopFutureFactory(new SimpleTaskQueue(), new TargetedUnparkManagedWaitStrategy(), Thread::new);
+		factory.start();
+		CountDownLatch parking = new CountDownLatch(1);
+		CentralisedFuture<Long> parkDuration = factory.supplySync(() -> {
+			parking.countDown();
+			long start = System.nanoTime();
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(200L));
+			return System.nanoTime() - start;
+		});
+		try {
+			assertTrue(parking.await(5L, TimeUnit.SECONDS));
+		} catch (InterruptedException ex) {
+			throw new AssertionError(ex);
+		}
+		CentralisedFuture<?> added = factory.runSync(() -> {});
+		long elapsed = parkDuration.orTimeout(5L, TimeUnit.SECONDS).join();
+		assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(150L), "Unparked after " + elapsed + "ns");
+		added.orTimeout(5L, TimeUnit.SECONDS).join();
+	}
+
+	@Test
+	public void interruptDoesNotStopLoop() {
+		factory = new EventLoopFutureFactory(new SimpleTaskQueue(), new TargetedUnparkManagedWaitStrategy(), Thread::new);
+		factory.start();
+		boolean interrupted = factory.supplySync(() -> {
+			Thread.currentThread().interrupt();
+			// Interrupts are visible to the running task
+			return Thread.currentThread().isInterrupted();
+		}).orTimeout(5L, TimeUnit.SECONDS).join();
+		assertTrue(interrupted);
+		factory.getPrimaryThread().interrupt();
+		assertEquals(3, factory.supplySync(() -> 3).orTimeout(5L, TimeUnit.SECONDS).join());
+	}
+
+	@Test
+	public void configureFactory() {
+		RecordingManagedWaitMetrics metrics = new RecordingManagedWaitMetrics();
+		factory = new EventLoopFutureFactory(new SimpleTaskQueue(), new TargetedUnparkManagedWaitStrategy(),
+				true, DrainBounds.unbounded(), metrics, NestingLimit.of(1, NestedWaitPolicy.FAIL), Thread::new);
+		factory.start();
+		int result = factory.supplySync(() -> {
+			return factory.supplyAsync(() -> factory.supplySync(() -> 3).join()).join();
+		}).orTimeout(5L, TimeUnit.SECONDS).join();
+		assertEquals(3, result);
+		assertTrue(metrics.snapshot().tasksEnqueued() >= 2);
+		assertEquals(1L, metrics.snapshot().waits());
+	}
+}
@@ -36,14 +36,28 @@ final class FactoryImpl extends DeadlockFreeFutureFactory implements ExtensionCo
 	private final ScheduledFuture<?> task;
 	
 	private FactoryImpl(TaskQueue taskQueue, ManagedWaitStrategy waitStrategy,
+						boolean signalAwaitedFuturesOnly, DrainBounds waitDrainBounds, ManagedWaitMetrics metrics,
+						NestingLimit nestingLimit,
 						Thread mainThread, ScheduledExecutorService mainThreadExecutor, ScheduledFuture<?> task) {
-		super(taskQueue, waitStrategy);
+		super(taskQueue, waitStrategy, signalAwaitedFuturesOnly, waitDrainBounds, metrics, nestingLimit);
 		this.mainThread = mainThread;
 		this.mainThreadExecutor = mainThreadExecutor;
 		this.task = task;
 	}
 
-	static FactoryImpl create(ManagedWaitStrategy waitStrategy) {
+	static FactoryImpl create(TaskQueue taskQueue, ManagedWaitStrategy waitStrategy,
+							  boolean signalAwaitedFuturesOnly, DrainBounds waitDrainBounds) {
+		return create(taskQueue, waitStrategy, signalAwaitedFuturesOnly, waitDrainBounds, ManagedWaitMetrics.noop());
+	}
+
+	static FactoryImpl create(TaskQueue taskQueue, ManagedWaitStrategy waitStrategy,
+							  boolean signalAwaitedFuturesOnly, DrainBounds waitDrainBounds, ManagedWaitMetrics metrics) {
+		return create(taskQueue, waitStrategy, signalAwaitedFuturesOnly, waitDrainBounds, metrics, NestingLimit.unbounded());
+	}
+
+	static FactoryImpl create(TaskQueue taskQueue, ManagedWaitStrategy waitStrategy,
+							  boolean signalAwaitedFuturesOnly, DrainBounds waitDrainBounds, ManagedWaitMetrics metrics,
+							  NestingLimit nestingLimit) {
 		ScheduledExecutorService mainThreadExecutor = Executors.newScheduledThreadPool(1,
 				(runnable) -> new Thread(runnable, "true-main-thread"));
 		Thread mainThread;
@@ -52,10 +66,10 @@ final class FactoryImpl extends DeadlockFreeFutureFactory implements ExtensionCo
 		} catch (InterruptedException | ExecutionException ex) {
 			throw Assertions.<RuntimeException>fail(ex);
 		}
-		TaskQueue taskQueue = new SimpleTaskQueue();
 		ScheduledFuture<?> task = mainThreadExecutor.scheduleWithFixedDelay(
 				taskQueue::pollAndRunAll, 0L, 100L, TimeUnit.MILLISECONDS);
-		return new FactoryImpl(taskQueue, waitStrategy, mainThread, mainThreadExecutor, task);
+		return new FactoryImpl(taskQueue, waitStrategy, signalAwaitedFuturesOnly, waitDrainBounds, metrics,
+				nestingLimit, mainThread, mainThreadExecutor, task);
 	}
 
 	ScheduledExecutorService mainThreadExecutor() {
@@ -12,6 +12,7 @@ import space.arim.omnibus.util.concurrent.FactoryOfTheFuture;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 public class FactoryInvocationContextProvider implements TestTemplateInvocationContextProvider  {
@@ -23,8 +24,35 @@ public class FactoryInvocationContextProvider implements TestTemplateInvocationC
 
 	@Override
 	public Stream<TestTemplateInvocationContext> provideTestTemplateInvocationContexts(ExtensionContext context) {
-		return Stream.of(new LightSleepManagedWaitStrategy(), new BlockingManagedWaitStrategy())
-				.map(DeadlockFreeFutureFactoryParameterResolver::new)
+		Stream<DeadlockFreeFutureFactoryParameterResolver> signalEveryFuture = Stream.of(
+				new LightSleepManagedWaitStrategy(), new BlockingManagedWaitStrategy(),
+				new BlockingManagedWaitStrategy(true), new BackoffManagedWaitStrategy(),
+				new TargetedUnparkManagedWaitStrategy(), new VirtualThreadAwareManagedWaitStrategy())
+				.map((waitStrategy) -> new DeadlockFreeFutureFactoryParameterResolver(
+						new SimpleTaskQueue(), waitStrategy, false, DrainBounds.unbounded()));
+		Stream<DeadlockFreeFutureFactoryParameterResolver> signalAwaitedFuturesOnly = Stream.of(
+				new BlockingManagedWaitStrategy(true), new TargetedUnparkManagedWaitStrategy())
+				.map((waitStrategy) -> new DeadlockFreeFutureFactoryParameterResolver(
+						new SimpleTaskQueue(), waitStrategy, true, DrainBounds.unbounded()));
+		Stream<DeadlockFreeFutureFactoryParameterResolver> ringBufferTaskQueue = Stream.of(
+				new LightSleepManagedWaitStrategy(), new TargetedUnparkManagedWaitStrategy())
+				.map((waitStrategy) -> new DeadlockFreeFutureFactoryParameterResolver(
+						new RingBufferTaskQueue(), waitStrategy, false, DrainBounds.unbounded()));
+		Stream<DeadlockFreeFutureFactoryParameterResolver> boundedWaitDrains = Stream.of(
+				new BlockingManagedWaitStrategy(), new TargetedUnparkManagedWaitStrategy())
+				.map((waitStrategy) -> new DeadlockFreeFutureFactoryParameterResolver(
+						new SimpleTaskQueue(), waitStrategy, false, DrainBounds.of(1L, TimeUnit.MILLISECONDS, true)));
+		Stream<DeadlockFreeFutureFactoryParameterResolver> priorityTaskQueue = Stream.of(
+				new LightSleepManagedWaitStrategy(), new BlockingManagedWaitStrategy(true))
+				.map((waitStrategy) -> new DeadlockFreeFutureFactoryParameterResolver(
+						new PriorityTaskQueue(), waitStrategy, false, DrainBounds.unbounded()));
+		Stream<DeadlockFreeFutureFactoryParameterResolver> stripedTaskQueue = Stream.of(
+				new BlockingManagedWaitStrategy(), new TargetedUnparkManagedWaitStrategy())
+				.map((waitStrategy) -> new DeadlockFreeFutureFactoryParameterResolver(
+						new StripedTaskQueue(), waitStrategy, false, DrainBounds.unbounded()));
+		return Stream.of(signalEveryFuture, signalAwaitedFuturesOnly, ringBufferTaskQueue, boundedWaitDrains,
+				priorityTaskQueue, stripedTaskQueue)
+				.flatMap((resolvers) -> resolvers)
 				.map((parameterResolver) -> new TestTemplateInvocationContext() {
 					@Override
 					public List<Extension> getAdditionalExtensions() {
@@ -35,10 +63,17 @@ public class FactoryInvocationContextProvider implements TestTemplateInvocationC
 
 	private static class DeadlockFreeFutureFactoryParameterResolver implements ParameterResolver {
 
+		private final TaskQueue taskQueue;
 		private final ManagedWaitStrategy waitStrategy;
+		private final boolean signalAwaitedFuturesOnly;
+		private final DrainBounds waitDrainBounds;
 
-		DeadlockFreeFutureFactoryParameterResolver(ManagedWaitStrategy waitStrategy) {
+		DeadlockFreeFutureFactoryParameterResolver(TaskQueue taskQueue, ManagedWaitStrategy waitStrategy,
+												   boolean signalAwaitedFuturesOnly, DrainBounds waitDrainBounds) {
+			this.taskQueue = taskQueue;
 			this.waitStrategy = waitStrategy;
+			this.signalAwaitedFuturesOnly = signalAwaitedFuturesOnly;
+			this.waitDrainBounds = waitDrainBounds;
 		}
 
 		@Override
@@ -46,6 +81,7 @@ public class FactoryInvocationContextProvider implements TestTemplateInvocationC
 				throws ParameterResolutionException {
 			Class<?> paramType = parameterContext.getParameter().getType();
 			return paramType.equals(FactoryOfTheFuture.class)
+					|| paramType.equals(DeadlockFreeFutureFactory.class)
 					|| paramType.equals(ScheduledExecutorService.class)
 					|| paramType.equals(ExecutorService.class);
 		}
@@ -55,8 +91,10 @@ public class FactoryInvocationContextProvider implements TestTemplateInvocationC
 				throws ParameterResolutionException {
 			Class<?> paramType = parameterContext.getParameter().getType();
 			FactoryImpl factory = extensionContext.getStore(ExtensionContext.Namespace.create(getClass()))
-					.getOrComputeIfAbsent(waitStrategy, FactoryImpl::create, FactoryImpl.class);
-			return paramType.equals(FactoryOfTheFuture.class) ? factory : factory.mainThreadExecutor();
+					.getOrComputeIfAbsent(waitStrategy,
+							(key) -> FactoryImpl.create(taskQueue, waitStrategy, signalAwaitedFuturesOnly, waitDrainBounds), FactoryImpl.class);
+			return paramType.equals(FactoryOfTheFuture.class) || paramType.equals(DeadlockFreeFutureFactory.class)
+					? factory : factory.mainThreadExecutor();
 		}
 	}
 
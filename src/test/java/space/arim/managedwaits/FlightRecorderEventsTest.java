@@ -0,0 +1,96 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import space.arim.omnibus.util.concurrent.CentralisedFuture;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FlightRecorderEventsTest {
+
+	@TempDir
+	public Path tempDir;
+
+	@Test
+	public void recordManagedWait() throws Throwable {
+		List<RecordedEvent> events;
+		try (Recording recording = new Recording()) {
+			recording.enable("space.arim.managedwaits.ManagedWait");
+			recording.enable("space.arim.managedwaits.SyncTaskDrain");
+			recording.enable("space.arim.managedwaits.SyncTaskEnqueue");
+			recording.start();
+
+			FactoryImpl factory = FactoryImpl.create(new SimpleTaskQueue(), new TargetedUnparkManagedWaitStrategy(),
+					false, DrainBounds.unbounded());
+			try {
+				factory.runSync(() -> {
+					CentralisedFuture<?> future = factory.runAsync(() -> sleep(20L)).thenRunSync(() -> {});
+					future.join();
+				}).orTimeout(5L, TimeUnit.SECONDS).join();
+			} finally {
+				factory.close();
+			}
+			recording.stop();
+			events = readEvents(recording);
+		}
+		List<RecordedEvent> waits = eventsNamed(events, "space.arim.managedwaits.ManagedWait");
+		assertEquals(1, waits.size(), events::toString);
+		RecordedEvent wait = waits.get(0);
+		assertEquals(TargetedUnparkManagedWaitStrategy.class.getName(), wait.getClass("waitStrategy").getName());
+		assertTrue(wait.getInt("iterations") >= 1);
+		assertEquals(1, wait.getInt("tasksRun"));
+		assertTrue(wait.getDuration().toMillis() >= 10L);
+
+		assertFalse(eventsNamed(events, "space.arim.managedwaits.SyncTaskDrain").isEmpty());
+		assertFalse(eventsNamed(events, "space.arim.managedwaits.SyncTaskEnqueue").isEmpty());
+	}
+
+	private List<RecordedEvent> readEvents(Recording recording) throws IOException {
+		Path file = tempDir.resolve("recording.jfr");
+		recording.dump(file);
+		return RecordingFile.readAllEvents(file);
+	}
+
+	private static List<RecordedEvent> eventsNamed(List<RecordedEvent> events, String name) {
+		return events.stream().filter((event) -> event.getEventType().getName().equals(name)).collect(Collectors.toList());
+	}
+
+	private static void sleep(long millis) {
+		try {
+			TimeUnit.MILLISECONDS.sleep(millis);
+		} catch (InterruptedException ex) {
+			throw new AssertionError(ex);
+		}
+	}
+
+}
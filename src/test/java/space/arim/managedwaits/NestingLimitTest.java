@@ -0,0 +1,93 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import space.arim.omnibus.util.concurrent.CentralisedFuture;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class NestingLimitTest {
+
+	private FactoryImpl factory;
+
+	private void createFactory(NestingLimit nestingLimit) {
+		factory = FactoryImpl.create(new SimpleTaskQueue(), new TargetedUnparkManagedWaitStrategy(), false,
+				DrainBounds.unbounded(), ManagedWaitMetrics.noop(), nestingLimit);
+	}
+
+	@AfterEach
+	public void tearDown() throws Throwable {
+		factory.close();
+	}
+
+	/**
+	 * Runs a sync task during a managed wait on the primary thread, and returns its result
+	 */
+	private <T> T duringManagedWait(Supplier<T> nestedTask) {
+		return factory.supplySync(() -> {
+			return factory.supplyAsync(() -> factory.supplySync(nestedTask).join()).join();
+		}).orTimeout(5L, TimeUnit.SECONDS).join();
+	}
+
+	@Test
+	public void depth() {
+		createFactory(NestingLimit.unbounded());
+		assertEquals(0, factory.managedWaitDepth());
+		assertEquals(0, factory.supplySync(factory::managedWaitDepth).join());
+		assertEquals(1, duringManagedWait(factory::managedWaitDepth));
+		assertEquals(2, duringManagedWait(() -> {
+			return factory.supplyAsync(() -> factory.supplySync(factory::managedWaitDepth).join()).join();
+		}));
+	}
+
+	@Test
+	public void failBeyondLimit() {
+		createFactory(NestingLimit.of(1, NestedWaitPolicy.FAIL));
+		String message = duringManagedWait(() -> {
+			CentralisedFuture<Integer> future = factory.newIncompleteFuture();
+			return assertThrows(IllegalStateException.class, future::join).getMessage();
+		});
+		assertEquals("Managed wait would exceed the nesting limit of 1", message);
+	}
+
+	@Test
+	public void blockWithoutDrainingBeyondLimit() {
+		createFactory(NestingLimit.of(1, NestedWaitPolicy.BLOCK_WITHOUT_DRAINING));
+		int result = duringManagedWait(() -> {
+			CentralisedFuture<Integer> future = factory.supplyAsync(() -> 3);
+			int value = future.join();
+			assertEquals(1, factory.managedWaitDepth());
+			return value;
+		});
+		assertEquals(3, result);
+	}
+
+	@Test
+	public void invalidLimit() {
+		createFactory(NestingLimit.unbounded());
+		assertThrows(IllegalArgumentException.class, () -> NestingLimit.of(0, NestedWaitPolicy.FAIL));
+	}
+}
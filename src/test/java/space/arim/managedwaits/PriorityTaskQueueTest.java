@@ -0,0 +1,76 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PriorityTaskQueueTest {
+
+	@Test
+	public void urgentRunsFirst() {
+		TaskQueue taskQueue = new PriorityTaskQueue();
+		List<String> ran = new ArrayList<>();
+		taskQueue.addTask(() -> ran.add("background"), TaskPriority.BACKGROUND);
+		taskQueue.addTask(() -> ran.add("normal"));
+		taskQueue.addTask(() -> ran.add("urgent"), TaskPriority.URGENT);
+		taskQueue.pollAndRunAll();
+		assertEquals(List.of("urgent", "normal", "background"), ran);
+	}
+
+	@Test
+	public void weightedRoundsDoNotStarve() {
+		TaskQueue taskQueue = new PriorityTaskQueue(2, 1, 1);
+		List<String> ran = new ArrayList<>();
+		for (int n = 0; n < 4; n++) {
+			int value = n;
+			taskQueue.addTask(() -> ran.add("u" + value), TaskPriority.URGENT);
+			taskQueue.addTask(() -> ran.add("b" + value), TaskPriority.BACKGROUND);
+		}
+		taskQueue.pollAndRunAll();
+		assertEquals(List.of("u0", "u1", "b0", "u2", "u3", "b1", "b2", "b3"), ran);
+	}
+
+	@Test
+	public void snapshotPerLane() {
+		TaskQueue taskQueue = new PriorityTaskQueue();
+		List<String> ran = new ArrayList<>();
+		taskQueue.addTask(() -> {
+			ran.add("normal");
+			taskQueue.addTask(() -> ran.add("late urgent"), TaskPriority.URGENT);
+		});
+		taskQueue.addTask(() -> ran.add("background"), TaskPriority.BACKGROUND);
+		taskQueue.pollAndRun(DrainBounds.snapshot());
+		assertEquals(List.of("normal", "background"), ran);
+		taskQueue.pollAndRunAll();
+		assertEquals(List.of("normal", "background", "late urgent"), ran);
+	}
+
+	@Test
+	public void invalidWeights() {
+		assertThrows(IllegalArgumentException.class, () -> new PriorityTaskQueue(1, 0, 1));
+	}
+
+}
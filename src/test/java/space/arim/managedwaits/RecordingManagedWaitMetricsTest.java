@@ -0,0 +1,118 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import org.junit.jupiter.api.Test;
+import space.arim.omnibus.util.concurrent.CentralisedFuture;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RecordingManagedWaitMetricsTest {
+
+	@Test
+	public void histogramPercentiles() {
+		Histogram histogram = new Histogram();
+		for (int n = 0; n < 90; n++) {
+			histogram.record(100L);
+		}
+		for (int n = 0; n < 10; n++) {
+			histogram.record(5_000L);
+		}
+		HistogramSnapshot snapshot = histogram.snapshot();
+		assertEquals(100L, snapshot.count());
+		assertEquals(90L * 100L + 10L * 5_000L, snapshot.sum());
+		assertEquals(5_000L, snapshot.max());
+		assertEquals(127L, snapshot.valueAtPercentile(50D));
+		assertEquals(127L, snapshot.valueAtPercentile(90D));
+		assertEquals(5_000L, snapshot.valueAtPercentile(99D));
+		assertThrows(IllegalArgumentException.class, () -> snapshot.valueAtPercentile(101D));
+	}
+
+	@Test
+	public void emptyHistogram() {
+		HistogramSnapshot snapshot = new Histogram().snapshot();
+		assertEquals(0L, snapshot.count());
+		assertEquals(0L, snapshot.valueAtPercentile(99D));
+		assertEquals(0D, snapshot.mean());
+	}
+
+	@Test
+	public void factoryReportsWaitsAndTasks() throws Throwable {
+		RecordingManagedWaitMetrics metrics = new RecordingManagedWaitMetrics();
+		FactoryImpl factory = FactoryImpl.create(new SimpleTaskQueue(), new BlockingManagedWaitStrategy(),
+				false, DrainBounds.unbounded(), metrics);
+		try {
+			factory.runSync(() -> {
+				CentralisedFuture<?> future = factory.runAsync(() -> sleep(50L)).thenRunSync(() -> {});
+				future.join();
+			}).orTimeout(5L, TimeUnit.SECONDS).join();
+		} finally {
+			factory.close();
+		}
+		ManagedWaitMetricsSnapshot snapshot = metrics.snapshot();
+		assertEquals(1L, snapshot.waits());
+		assertEquals(1L, snapshot.waitDurations().count());
+		assertTrue(snapshot.waitDurations().max() >= TimeUnit.MILLISECONDS.toNanos(25L),
+				() -> "Wait too short: " + snapshot);
+		assertTrue(snapshot.drainDurations().count() >= 1L, snapshot::toString);
+		assertEquals(snapshot.drainDurations().count(), snapshot.drainSizes().count());
+		// The thenRunSync dependent is the one task run during the wait
+		assertEquals(1L, snapshot.drainSizes().sum(), snapshot::toString);
+		assertEquals(1L, snapshot.drainSizes().max(), snapshot::toString);
+		assertEquals(snapshot.tasksEnqueued(), snapshot.tasksRun());
+		assertEquals(0L, snapshot.queueDepth());
+	}
+
+	@Test
+	public void eventLoopReportsDrains() throws InterruptedException {
+		RecordingManagedWaitMetrics metrics = new RecordingManagedWaitMetrics();
+		EventLoopFutureFactory factory = new EventLoopFutureFactory(new SimpleTaskQueue(),
+				new TargetedUnparkManagedWaitStrategy(), false, DrainBounds.unbounded(), metrics,
+				NestingLimit.unbounded(), Thread::new);
+		factory.start();
+		try {
+			for (int n = 0; n < 5; n++) {
+				factory.runSync(() -> {}).orTimeout(5L, TimeUnit.SECONDS).join();
+			}
+		} finally {
+			factory.close();
+			assertTrue(factory.awaitTermination(1L, TimeUnit.SECONDS));
+		}
+		ManagedWaitMetricsSnapshot snapshot = metrics.snapshot();
+		assertEquals(0L, snapshot.waits());
+		assertTrue(snapshot.drainDurations().count() >= 5L, snapshot::toString);
+		// Every task was run by a drain of the event loop
+		assertEquals(5L, snapshot.drainSizes().sum(), snapshot::toString);
+		assertEquals(5L, snapshot.tasksRun());
+	}
+
+	private static void sleep(long millis) {
+		try {
+			TimeUnit.MILLISECONDS.sleep(millis);
+		} catch (InterruptedException ex) {
+			throw new AssertionError(ex);
+		}
+	}
+
+}
@@ -0,0 +1,191 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RingBufferTaskQueueTest {
+
+	@Test
+	public void capacityRoundedToPowerOfTwo() {
+		assertEquals(1, new RingBufferTaskQueue(1, RingBufferTaskQueue.FullQueuePolicy.REJECT).capacity());
+		assertEquals(8, new RingBufferTaskQueue(5, RingBufferTaskQueue.FullQueuePolicy.REJECT).capacity());
+		assertEquals(16, new RingBufferTaskQueue(16, RingBufferTaskQueue.FullQueuePolicy.REJECT).capacity());
+		assertThrows(IllegalArgumentException.class,
+				() -> new RingBufferTaskQueue(0, RingBufferTaskQueue.FullQueuePolicy.REJECT));
+	}
+
+	@Test
+	public void runsInOrderAcrossWraparound() {
+		TaskQueue taskQueue = new RingBufferTaskQueue(4, RingBufferTaskQueue.FullQueuePolicy.REJECT);
+		List<Integer> ran = new ArrayList<>();
+		for (int round = 0; round < 5; round++) {
+			for (int n = 0; n < 3; n++) {
+				int value = round * 3 + n;
+				assertTrue(taskQueue.addTask(() -> ran.add(value)));
+			}
+			taskQueue.pollAndRunAll();
+		}
+		for (int n = 0; n < 15; n++) {
+			assertEquals(n, ran.get(n));
+		}
+	}
+
+	@Test
+	public void rejectNullTask() {
+		TaskQueue taskQueue = new RingBufferTaskQueue(4, RingBufferTaskQueue.FullQueuePolicy.REJECT);
+		assertThrows(NullPointerException.class, () -> taskQueue.addTask(null));
+		List<Integer> ran = new ArrayList<>();
+		assertTrue(taskQueue.addTask(() -> ran.add(0)));
+		taskQueue.pollAndRunAll();
+		assertEquals(List.of(0), ran);
+	}
+
+	@Test
+	public void rejectWhenFull() {
+		TaskQueue taskQueue = new RingBufferTaskQueue(2, RingBufferTaskQueue.FullQueuePolicy.REJECT);
+		assertTrue(taskQueue.addTask(() -> {}));
+		assertTrue(taskQueue.addTask(() -> {}));
+		assertFalse(taskQueue.addTask(() -> {}));
+		taskQueue.pollAndRunAll();
+		assertTrue(taskQueue.addTask(() -> {}));
+	}
+
+	@Test
+	public void spillPreservesOrder() {
+		TaskQueue taskQueue = new RingBufferTaskQueue(2, RingBufferTaskQueue.FullQueuePolicy.SPILL);
+		List<Integer> ran = new ArrayList<>();
+		for (int n = 0; n < 10; n++) {
+			int value = n;
+			assertTrue(taskQueue.addTask(() -> ran.add(value)));
+		}
+		taskQueue.pollAndRunAll();
+		assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), ran);
+	}
+
+	@Test
+	public void waitUntilDrained() throws Exception {
+		TaskQueue taskQueue = new RingBufferTaskQueue(1, RingBufferTaskQueue.FullQueuePolicy.WAIT);
+		List<Integer> ran = new ArrayList<>();
+		assertTrue(taskQueue.addTask(() -> ran.add(0)));
+		CompletableFuture<?> blockedAdd = CompletableFuture.runAsync(() -> taskQueue.addTask(() -> ran.add(1)));
+		TimeUnit.MILLISECONDS.sleep(50L);
+		assertFalse(blockedAdd.isDone());
+
+		taskQueue.pollAndRunAll();
+		blockedAdd.get(1L, TimeUnit.SECONDS);
+		taskQueue.pollAndRunAll();
+		assertEquals(List.of(0, 1), ran);
+	}
+
+	@Test
+	public void consumerDoesNotWaitOnItself() {
+		TaskQueue taskQueue = new RingBufferTaskQueue(2, RingBufferTaskQueue.FullQueuePolicy.WAIT);
+		List<Integer> ran = new ArrayList<>();
+		assertTrue(taskQueue.addTask(() -> {
+			ran.add(0);
+			// Refill the ring from the consumer, then add beyond its capacity
+			for (int n = 2; n < 6; n++) {
+				int value = n;
+				assertTrue(taskQueue.addTask(() -> ran.add(value)));
+			}
+		}));
+		assertTrue(taskQueue.addTask(() -> ran.add(1)));
+		assertTimeoutPreemptively(Duration.ofSeconds(5L), taskQueue::pollAndRunAll);
+		assertEquals(List.of(0, 1, 2, 3, 4, 5), ran);
+	}
+
+	@Test
+	public void addBatchBeyondCapacity() {
+		TaskQueue taskQueue = new RingBufferTaskQueue(4, RingBufferTaskQueue.FullQueuePolicy.SPILL);
+		List<Integer> ran = new ArrayList<>();
+		assertTrue(taskQueue.addTask(() -> ran.add(0)));
+		List<Runnable> batch = new ArrayList<>();
+		for (int n = 1; n < 10; n++) {
+			int value = n;
+			batch.add(() -> ran.add(value));
+		}
+		assertEquals(9, taskQueue.addTasks(batch));
+		taskQueue.pollAndRunAll();
+		assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), ran);
+	}
+
+	@Test
+	public void rejectPartOfBatch() {
+		TaskQueue taskQueue = new RingBufferTaskQueue(4, RingBufferTaskQueue.FullQueuePolicy.REJECT);
+		assertEquals(4, taskQueue.addTasks(List.of(() -> {}, () -> {}, () -> {}, () -> {}, () -> {}, () -> {})));
+	}
+
+	@Test
+	public void concurrentProducers() throws InterruptedException {
+		int producers = 4;
+		int tasksPerProducer = 10_000;
+		TaskQueue taskQueue = new RingBufferTaskQueue(64, RingBufferTaskQueue.FullQueuePolicy.SPILL);
+		int[] lastSeen = new int[producers];
+		int[] ranCount = new int[1];
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>();
+		for (int p = 0; p < producers; p++) {
+			int producer = p;
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException ex) {
+					throw new AssertionError(ex);
+				}
+				for (int n = 1; n <= tasksPerProducer; n++) {
+					int value = n;
+					taskQueue.addTask(() -> {
+						// Each producer's tasks run in the order they were added
+						assertEquals(value - 1, lastSeen[producer]);
+						lastSeen[producer] = value;
+						ranCount[0]++;
+					});
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		start.countDown();
+		while (ranCount[0] < producers * tasksPerProducer) {
+			taskQueue.pollAndRunAll();
+			Thread.onSpinWait();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		taskQueue.pollAndRunAll();
+		assertEquals(producers * tasksPerProducer, ranCount[0]);
+	}
+
+}
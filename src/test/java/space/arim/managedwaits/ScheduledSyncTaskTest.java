@@ -0,0 +1,82 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import org.junit.jupiter.api.TestTemplate;
+import org.junit.jupiter.api.extension.ExtendWith;
+import space.arim.omnibus.util.concurrent.CentralisedFuture;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(FactoryInvocationContextProvider.class)
+public class ScheduledSyncTaskTest {
+
+	@TestTemplate
+	public void runDuringManagedWait(DeadlockFreeFutureFactory factory) {
+		long delay = TimeUnit.MILLISECONDS.toNanos(20L);
+		long elapsed = factory.supplySync(() -> {
+			CentralisedFuture<Thread> future = factory.newIncompleteFuture();
+			long start = System.nanoTime();
+			factory.scheduleSync(() -> future.complete(Thread.currentThread()), delay, TimeUnit.NANOSECONDS);
+			assertSame(factory.getPrimaryThread(), future.join());
+			return System.nanoTime() - start;
+		}).orTimeout(5L, TimeUnit.SECONDS).join();
+		assertTrue(elapsed >= delay, "Ran early after " + elapsed + "ns");
+	}
+
+	@TestTemplate
+	public void scheduleFromOtherThread(DeadlockFreeFutureFactory factory) {
+		int result = factory.supplySync(() -> {
+			CentralisedFuture<Integer> future = factory.newIncompleteFuture();
+			factory.runAsync(() -> factory.executeSyncLater(() -> future.complete(1), 10L, TimeUnit.MILLISECONDS));
+			return future.join();
+		}).orTimeout(5L, TimeUnit.SECONDS).join();
+		assertEquals(1, result);
+	}
+
+	@TestTemplate
+	public void cancel(DeadlockFreeFutureFactory factory) {
+		AtomicBoolean ran = new AtomicBoolean();
+		factory.runSync(() -> {
+			ScheduledSyncTask cancelled = factory.scheduleSync(() -> ran.set(true), 5L, TimeUnit.MILLISECONDS);
+			assertTrue(cancelled.cancel());
+			assertTrue(cancelled.isCancelled());
+			assertFalse(cancelled.cancel());
+			CentralisedFuture<?> later = factory.newIncompleteFuture();
+			ScheduledSyncTask after = factory.scheduleSync(() -> later.complete(null), 10L, TimeUnit.MILLISECONDS);
+			later.join();
+			assertTrue(after.isDone());
+			assertFalse(after.isCancelled());
+		}).orTimeout(5L, TimeUnit.SECONDS).join();
+		assertFalse(ran.get());
+	}
+
+	@TestTemplate
+	public void runDueOffPrimaryThread(DeadlockFreeFutureFactory factory) {
+		assertThrows(IllegalStateException.class, factory::runDueSyncTasks);
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.arim.omnibus.util.concurrent.CentralisedFuture;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShardedFutureFactoryTest {
+
+	private static final int SHARDS = 2;
+
+	private ShardedFutureFactory factory;
+	private final List<ScheduledExecutorService> primaryThreads = new ArrayList<>();
+
+	@BeforeEach
+	public void setup() throws InterruptedException, ExecutionException {
+		List<TaskQueue> taskQueues = new ArrayList<>();
+		List<ManagedWaitStrategy> waitStrategies = new ArrayList<>();
+		for (int n = 0; n < SHARDS; n++) {
+			taskQueues.add(new SimpleTaskQueue());
+			waitStrategies.add(new TargetedUnparkManagedWaitStrategy());
+		}
+		factory = new ShardedFutureFactory(taskQueues, waitStrategies);
+		for (int n = 0; n < SHARDS; n++) {
+			ShardedFutureFactory.Shard shard = factory.shard(n);
+			TaskQueue taskQueue = taskQueues.get(n);
+			ScheduledExecutorService primaryThread = Executors.newSingleThreadScheduledExecutor(
+					(runnable) -> new Thread(runnable, "shard-" + shard.index()));
+			primaryThread.submit(shard::bindPrimaryThread).get();
+			primaryThread.scheduleWithFixedDelay(taskQueue::pollAndRunAll, 0L, 100L, TimeUnit.MILLISECONDS);
+			primaryThreads.add(primaryThread);
+		}
+	}
+
+	@AfterEach
+	public void tearDown() throws InterruptedException {
+		for (ScheduledExecutorService primaryThread : primaryThreads) {
+			primaryThread.shutdown();
+			assertTrue(primaryThread.awaitTermination(1L, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	public void routeByKey() {
+		ShardedFutureFactory.Shard shard = factory.shardFor("region");
+		assertSame(shard, factory.shardFor("region"));
+		CentralisedFuture<Thread> future = factory.newIncompleteFuture();
+		factory.executeSync("region", () -> {
+			assertSame(shard, factory.currentShard());
+			future.complete(Thread.currentThread());
+		});
+		assertSame(shard.getPrimaryThread(), future.orTimeout(5L, TimeUnit.SECONDS).join());
+		assertFalse(factory.isPrimaryThread());
+	}
+
+	@Test
+	public void crossShardJoinsDoNotDeadlock() {
+		ShardedFutureFactory.Shard first = factory.shard(0);
+		ShardedFutureFactory.Shard second = factory.shard(1);
+		// Each primary thread awaits a future which only the other primary thread completes
+		CentralisedFuture<Integer> fromFirst = first.supplySync(() -> {
+			return second.supplySync(() -> first.supplySync(() -> 1).join() + 1).join() + 1;
+		});
+		assertEquals(3, fromFirst.orTimeout(5L, TimeUnit.SECONDS).join());
+	}
+
+	@Test
+	public void crossShardJoinRunsOwnTasks() throws InterruptedException, ExecutionException {
+		ShardedFutureFactory.Shard first = factory.shard(0);
+		ShardedFutureFactory.Shard second = factory.shard(1);
+		ExecutorService async = Executors.newSingleThreadExecutor();
+		try {
+			// The second shard's future depends on a task queued to the first shard
+			CentralisedFuture<String> fromSecond = second.newIncompleteFuture();
+			String result = first.supplySync(() -> {
+				async.execute(() -> first.runSync(() -> fromSecond.complete("completed")));
+				return fromSecond.join();
+			}).orTimeout(5L, TimeUnit.SECONDS).join();
+			assertEquals("completed", result);
+		} finally {
+			async.shutdown();
+		}
+	}
+
+	@Test
+	public void bindTwice() throws InterruptedException, ExecutionException {
+		ShardedFutureFactory.Shard shard = factory.shard(0);
+		assertThrows(IllegalStateException.class, shard::bindPrimaryThread);
+		assertThrows(IllegalStateException.class, () -> {
+			try {
+				primaryThreads.get(1).submit(shard::bindPrimaryThread).get();
+			} catch (ExecutionException ex) {
+				throw ex.getCause();
+			}
+		});
+	}
+
+	@Test
+	public void bindConcurrently() throws InterruptedException {
+		ShardedFutureFactory unbound = new ShardedFutureFactory(
+				List.of(new SimpleTaskQueue()), List.of(new TargetedUnparkManagedWaitStrategy()));
+		ShardedFutureFactory.Shard shard = unbound.shard(0);
+		int threadCount = 4;
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicInteger bound = new AtomicInteger();
+		List<Thread> threads = new ArrayList<>();
+		for (int n = 0; n < threadCount; n++) {
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+					shard.bindPrimaryThread();
+					bound.incrementAndGet();
+				} catch (InterruptedException | IllegalStateException ignored) {}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(1, bound.get());
+		assertTrue(threads.contains(shard.getPrimaryThread()));
+	}
+
+	@Test
+	public void configureShards() throws InterruptedException, ExecutionException {
+		TaskQueue firstQueue = new SimpleTaskQueue();
+		RecordingManagedWaitMetrics metrics = new RecordingManagedWaitMetrics();
+		ShardedFutureFactory configured = new ShardedFutureFactory(
+				List.of(firstQueue, new SimpleTaskQueue()),
+				List.of(new TargetedUnparkManagedWaitStrategy(), new TargetedUnparkManagedWaitStrategy()),
+				false, DrainBounds.unbounded(), metrics, NestingLimit.of(1, NestedWaitPolicy.FAIL));
+		ShardedFutureFactory.Shard shard = configured.shard(0);
+		configured.shard(1).executeSync(() -> {});
+		assertEquals(1L, metrics.snapshot().tasksEnqueued());
+
+		ScheduledExecutorService primaryThread = Executors.newSingleThreadScheduledExecutor();
+		try {
+			primaryThread.submit(shard::bindPrimaryThread).get();
+			primaryThread.scheduleWithFixedDelay(firstQueue::pollAndRunAll, 0L, 10L, TimeUnit.MILLISECONDS);
+			// A managed wait within a managed wait exceeds the nesting limit
+			String message = shard.supplySync(() -> {
+				return shard.supplyAsync(() -> shard.supplySync(() -> {
+					CentralisedFuture<Integer> future = shard.newIncompleteFuture();
+					return assertThrows(IllegalStateException.class, future::join).getMessage();
+				}).join()).join();
+			}).orTimeout(5L, TimeUnit.SECONDS).join();
+			assertEquals("Managed wait would exceed the nesting limit of 1", message);
+		} finally {
+			primaryThread.shutdown();
+		}
+	}
+
+	@Test
+	public void mismatchedSizes() {
+		assertThrows(IllegalArgumentException.class, () -> new ShardedFutureFactory(
+				List.of(new SimpleTaskQueue()), List.of()));
+	}
+}
@@ -0,0 +1,215 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.arim.omnibus.util.concurrent.CentralisedFuture;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StallWatchdogTest {
+
+	private final BlockingQueue<StallReport> reports = new LinkedBlockingQueue<>();
+	private StallWatchdog watchdog;
+	private FactoryImpl factory;
+
+	@BeforeEach
+	public void setup() {
+		watchdog = new StallWatchdog(50L, TimeUnit.MILLISECONDS, reports::add);
+		factory = FactoryImpl.create(new SimpleTaskQueue(), new TargetedUnparkManagedWaitStrategy(),
+				false, DrainBounds.unbounded());
+		watchdog.watch(factory);
+		watchdog.start();
+	}
+
+	@AfterEach
+	public void tearDown() throws Throwable {
+		watchdog.close();
+		factory.close();
+	}
+
+	@Test
+	public void reportLongTask() throws InterruptedException {
+		Runnable slowTask = () -> sleep(200L);
+		factory.executeSync(slowTask);
+		StallReport report = reports.poll(2L, TimeUnit.SECONDS);
+		assertNotNull(report);
+		assertFalse(report.isManagedWait());
+		assertSame(slowTask, report.task());
+		assertSame(factory.getPrimaryThread(), report.thread());
+		assertTrue(report.durationNanos() >= TimeUnit.MILLISECONDS.toNanos(50L));
+		assertTrue(report.stackTrace().length > 0);
+	}
+
+	@Test
+	public void reportLongWait() throws InterruptedException {
+		CentralisedFuture<?> slowFuture = factory.runAsync(() -> sleep(300L));
+		factory.executeSync(slowFuture::join);
+		StallReport report = reports.poll(2L, TimeUnit.SECONDS);
+		assertNotNull(report);
+		assertTrue(report.isManagedWait());
+		assertNull(report.task());
+		assertSame(slowFuture, report.awaitedFuture());
+	}
+
+	@Test
+	public void reportLongScheduledTask() throws InterruptedException {
+		Runnable slowTask = () -> sleep(200L);
+		factory.scheduleSync(slowTask, 10L, TimeUnit.MILLISECONDS);
+		// The timing wheel is advanced during managed waits
+		CentralisedFuture<?> slowFuture = factory.runAsync(() -> sleep(400L));
+		factory.executeSync(slowFuture::join);
+		assertNotNull(pollTaskReport(slowTask));
+	}
+
+	@Test
+	public void reportLongDependent() throws InterruptedException {
+		CentralisedFuture<Object> future = factory.newIncompleteFuture();
+		future.thenRunSync(() -> sleep(200L));
+		future.complete(null);
+		StallReport report = reports.poll(2L, TimeUnit.SECONDS);
+		assertNotNull(report);
+		assertFalse(report.isManagedWait());
+		assertSame(factory.getPrimaryThread(), report.thread());
+	}
+
+	@Test
+	public void reportSlowDependentAmongBatch() throws InterruptedException {
+		CentralisedFuture<Object> future = factory.newIncompleteFuture();
+		for (int n = 0; n < 5; n++) {
+			future.thenRunSync(() -> {});
+		}
+		future.thenRunSync(() -> sleep(200L));
+		future.complete(null);
+		StallReport report = reports.poll(2L, TimeUnit.SECONDS);
+		assertNotNull(report);
+		// Attributed to the dependent itself, rather than the batch of dependents
+		assertTrue(report.task().getClass().getName().startsWith(CompletableFuture.class.getName()),
+				() -> "Attributed to " + report.task());
+	}
+
+	@Test
+	public void watchSeveralPrimaryThreads() throws Throwable {
+		FactoryImpl otherFactory = FactoryImpl.create(new SimpleTaskQueue(), new TargetedUnparkManagedWaitStrategy(),
+				false, DrainBounds.unbounded());
+		try {
+			watchdog.watch(otherFactory);
+			Runnable slowTask = () -> sleep(200L);
+			Runnable otherSlowTask = () -> sleep(200L);
+			factory.executeSync(slowTask);
+			otherFactory.executeSync(otherSlowTask);
+			StallReport report = pollTaskReport(slowTask);
+			StallReport otherReport = pollTaskReport(otherSlowTask);
+			assertNotNull(report);
+			assertNotNull(otherReport);
+			assertSame(factory.getPrimaryThread(), report.thread());
+			assertSame(otherFactory.getPrimaryThread(), otherReport.thread());
+		} finally {
+			otherFactory.close();
+		}
+	}
+
+	@Test
+	public void reportEnclosingTaskAfterNestedTask() throws InterruptedException {
+		Runnable slowTask = () -> {
+			// Runs a nested sync task during a managed wait
+			factory.supplyAsync(() -> factory.supplySync(() -> 1).join()).join();
+			sleep(200L);
+		};
+		factory.executeSync(slowTask);
+		assertNotNull(pollTaskReport(slowTask));
+	}
+
+	@Test
+	public void closeStopsWatching() throws InterruptedException {
+		watchdog.close();
+		BlockingQueue<StallReport> otherReports = new LinkedBlockingQueue<>();
+		StallWatchdog otherWatchdog = new StallWatchdog(50L, TimeUnit.MILLISECONDS, otherReports::add);
+		try {
+			// Watchable again once the first watchdog stopped watching
+			otherWatchdog.watch(factory);
+			otherWatchdog.start();
+			Runnable slowTask = () -> sleep(200L);
+			factory.executeSync(slowTask);
+			StallReport report = otherReports.poll(2L, TimeUnit.SECONDS);
+			assertNotNull(report);
+			assertSame(slowTask, report.task());
+		} finally {
+			otherWatchdog.close();
+		}
+		assertThrows(IllegalStateException.class, () -> watchdog.watch(factory));
+		assertEquals(0, reports.size());
+	}
+
+	@Test
+	public void rejectWatchingTwice() {
+		assertThrows(IllegalStateException.class, () -> watchdog.watch(factory));
+	}
+
+	private StallReport pollTaskReport(Runnable task) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2L);
+		List<StallReport> others = new ArrayList<>();
+		try {
+			StallReport report;
+			while ((report = reports.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) != null) {
+				if (report.task() == task) {
+					return report;
+				}
+				others.add(report);
+			}
+			return null;
+		} finally {
+			reports.addAll(others);
+		}
+	}
+
+	@Test
+	public void ignoreShortTasks() throws InterruptedException {
+		for (int n = 0; n < 20; n++) {
+			factory.runSync(() -> sleep(1L)).join();
+		}
+		assertNull(reports.poll(150L, TimeUnit.MILLISECONDS));
+		assertEquals(0, reports.size());
+	}
+
+	private static void sleep(long millis) {
+		try {
+			TimeUnit.MILLISECONDS.sleep(millis);
+		} catch (InterruptedException ex) {
+			throw new AssertionError(ex);
+		}
+	}
+
+}
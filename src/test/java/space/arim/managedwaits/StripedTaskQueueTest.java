@@ -0,0 +1,205 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StripedTaskQueueTest {
+
+	@Test
+	public void stripeCountRoundedToPowerOfTwo() {
+		assertEquals(1, new StripedTaskQueue(1, StripedTaskQueue.Ordering.PER_PRODUCER).stripeCount());
+		assertEquals(8, new StripedTaskQueue(5, StripedTaskQueue.Ordering.PER_PRODUCER).stripeCount());
+		assertEquals(16, new StripedTaskQueue(16, StripedTaskQueue.Ordering.GLOBAL).stripeCount());
+		assertThrows(IllegalArgumentException.class,
+				() -> new StripedTaskQueue(0, StripedTaskQueue.Ordering.PER_PRODUCER));
+	}
+
+	@ParameterizedTest
+	@EnumSource(StripedTaskQueue.Ordering.class)
+	public void runsInOrderFromOneProducer(StripedTaskQueue.Ordering ordering) {
+		TaskQueue taskQueue = new StripedTaskQueue(4, ordering);
+		List<Integer> ran = new ArrayList<>();
+		for (int n = 0; n < 5; n++) {
+			int value = n;
+			assertTrue(taskQueue.addTask(() -> ran.add(value)));
+		}
+		assertEquals(3, taskQueue.addTasks(List.of(() -> ran.add(5), () -> ran.add(6), () -> ran.add(7))));
+		taskQueue.pollAndRunAll();
+		assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7), ran);
+	}
+
+	@Test
+	public void globalOrderingAcrossProducers() throws InterruptedException {
+		TaskQueue taskQueue = new StripedTaskQueue(8, StripedTaskQueue.Ordering.GLOBAL);
+		List<Integer> ran = new ArrayList<>();
+		for (int n = 0; n < 20; n++) {
+			int value = n;
+			// Each task is added from a different thread, so likely on a different stripe
+			Thread thread = new Thread(() -> taskQueue.addTask(() -> ran.add(value)));
+			thread.start();
+			thread.join();
+		}
+		taskQueue.pollAndRunAll();
+		List<Integer> expected = new ArrayList<>();
+		for (int n = 0; n < 20; n++) {
+			expected.add(n);
+		}
+		assertEquals(expected, ran);
+	}
+
+	@Test
+	public void globalOrderingWithConcurrentProducers() throws InterruptedException {
+		int producers = 4;
+		int tasksPerProducer = 10_000;
+		TaskQueue taskQueue = new StripedTaskQueue(16, StripedTaskQueue.Ordering.GLOBAL);
+		AtomicLong clock = new AtomicLong();
+		List<TimedTask> ran = new ArrayList<>();
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>();
+		for (int p = 0; p < producers; p++) {
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException ex) {
+					throw new AssertionError(ex);
+				}
+				for (int n = 0; n < tasksPerProducer; n++) {
+					TimedTask task = new TimedTask(ran);
+					task.addStarted = clock.getAndIncrement();
+					taskQueue.addTask(task);
+					task.addFinished = clock.getAndIncrement();
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		start.countDown();
+		while (ran.size() < producers * tasksPerProducer) {
+			taskQueue.pollAndRunAll();
+			Thread.yield();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		// A task whose addition finished before another's began must run first
+		long earliestFinishAfter = Long.MAX_VALUE;
+		for (int n = ran.size() - 1; n >= 0; n--) {
+			TimedTask task = ran.get(n);
+			assertTrue(task.addStarted < earliestFinishAfter, "Task at " + n + " ran after a task added later");
+			earliestFinishAfter = Math.min(earliestFinishAfter, task.addFinished);
+		}
+	}
+
+	private static final class TimedTask implements Runnable {
+
+		private final List<TimedTask> ran;
+		long addStarted;
+		long addFinished;
+
+		TimedTask(List<TimedTask> ran) {
+			this.ran = ran;
+		}
+
+		@Override
+		public void run() {
+			ran.add(this);
+		}
+	}
+
+	@ParameterizedTest
+	@EnumSource(StripedTaskQueue.Ordering.class)
+	public void timeBoundedDrainResumes(StripedTaskQueue.Ordering ordering) {
+		TaskQueue taskQueue = new StripedTaskQueue(4, ordering);
+		List<Integer> ran = new ArrayList<>();
+		for (int n = 0; n < 3; n++) {
+			int value = n;
+			taskQueue.addTask(() -> {
+				ran.add(value);
+				try {
+					TimeUnit.MILLISECONDS.sleep(5L);
+				} catch (InterruptedException ex) {
+					throw new AssertionError(ex);
+				}
+			});
+		}
+		assertFalse(taskQueue.pollAndRun(DrainBounds.of(1L, TimeUnit.MILLISECONDS, false)));
+		assertEquals(List.of(0), ran);
+		taskQueue.pollAndRunAll();
+		assertEquals(List.of(0, 1, 2), ran);
+	}
+
+	@ParameterizedTest
+	@EnumSource(StripedTaskQueue.Ordering.class)
+	public void concurrentProducers(StripedTaskQueue.Ordering ordering) throws InterruptedException {
+		int producers = 4;
+		int tasksPerProducer = 10_000;
+		TaskQueue taskQueue = new StripedTaskQueue(2, ordering);
+		int[] lastSeen = new int[producers];
+		int[] ranCount = new int[1];
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>();
+		for (int p = 0; p < producers; p++) {
+			int producer = p;
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException ex) {
+					throw new AssertionError(ex);
+				}
+				for (int n = 1; n <= tasksPerProducer; n++) {
+					int value = n;
+					taskQueue.addTask(() -> {
+						// Each producer's tasks run in the order they were added
+						assertEquals(value - 1, lastSeen[producer]);
+						lastSeen[producer] = value;
+						ranCount[0]++;
+					});
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		start.countDown();
+		while (ranCount[0] < producers * tasksPerProducer) {
+			taskQueue.pollAndRunAll();
+			Thread.onSpinWait();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		taskQueue.pollAndRunAll();
+		assertEquals(producers * tasksPerProducer, ranCount[0]);
+	}
+
+}
@@ -0,0 +1,223 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SyncBatchSubscriberTest {
+
+	private FactoryImpl factory;
+
+	@BeforeEach
+	public void setup() {
+		factory = FactoryImpl.create(new SimpleTaskQueue(), new TargetedUnparkManagedWaitStrategy(), false,
+				DrainBounds.unbounded());
+	}
+
+	@AfterEach
+	public void tearDown() throws Throwable {
+		factory.close();
+	}
+
+	@Test
+	public void deliverInBatchesOnPrimaryThread() {
+		List<Integer> received = new ArrayList<>();
+		List<Integer> batchSizes = new ArrayList<>();
+		CompletableFuture<?> completion = new CompletableFuture<>();
+		SyncBatchSubscriber<Integer> subscriber = new SyncBatchSubscriber<>(factory, 64, 16, (batch) -> {
+			assertTrue(factory.isPrimaryThread());
+			received.addAll(batch);
+			batchSizes.add(batch.size());
+		}, () -> completion.complete(null), completion::completeExceptionally);
+		try (SubmissionPublisher<Integer> publisher = new SubmissionPublisher<>()) {
+			publisher.subscribe(subscriber);
+			for (int n = 0; n < 1000; n++) {
+				publisher.submit(n);
+			}
+		}
+		completion.orTimeout(5L, TimeUnit.SECONDS).join();
+		assertEquals(1000, received.size());
+		for (int n = 0; n < 1000; n++) {
+			assertEquals(n, received.get(n));
+		}
+		assertTrue(batchSizes.stream().allMatch((size) -> size <= 16), "Batches " + batchSizes);
+		assertTrue(batchSizes.size() < 1000, "Expected batching");
+	}
+
+	@Test
+	public void demandFollowsDrains() {
+		AtomicLong requested = new AtomicLong();
+		AtomicLong consumed = new AtomicLong();
+		CompletableFuture<?> done = new CompletableFuture<>();
+		SyncBatchSubscriber<Long> subscriber = new SyncBatchSubscriber<>(factory, 8, (batch) -> {
+			consumed.addAndGet(batch.size());
+			if (consumed.get() == 100) {
+				done.complete(null);
+			}
+		});
+		subscriber.onSubscribe(new Flow.Subscription() {
+			@Override
+			public void request(long n) {
+				requested.addAndGet(n);
+			}
+
+			@Override
+			public void cancel() {}
+		});
+		long sent = 0;
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+		while (sent < 100) {
+			assertTrue(System.nanoTime() < deadline, "Timed out");
+			if (sent < requested.get()) {
+				subscriber.onNext(sent++);
+			} else {
+				Thread.onSpinWait();
+			}
+			assertTrue(sent - consumed.get() <= 8, "Exceeded buffer");
+		}
+		done.orTimeout(5L, TimeUnit.SECONDS).join();
+	}
+
+	@Test
+	public void consumerFailureCancels() {
+		RuntimeException failure = new IllegalStateException("Expected");
+		CompletableFuture<Throwable> error = new CompletableFuture<>();
+		CompletableFuture<Boolean> cancelled = new CompletableFuture<>();
+		SyncBatchSubscriber<String> subscriber = new SyncBatchSubscriber<>(factory, 4, 4, (batch) -> {
+			throw failure;
+		}, () -> {}, error::complete);
+		subscriber.onSubscribe(new Flow.Subscription() {
+			@Override
+			public void request(long n) {}
+
+			@Override
+			public void cancel() {
+				cancelled.complete(true);
+			}
+		});
+		subscriber.onNext("item");
+		assertSame(failure, error.orTimeout(5L, TimeUnit.SECONDS).join());
+		assertTrue(cancelled.join());
+	}
+
+	@Test
+	public void publisherSignallingOnPrimaryThread() {
+		TaskQueue taskQueue = new SimpleTaskQueue();
+		DeadlockFreeFutureFactory factory = new CurrentThreadFactory(taskQueue);
+		int total = 200_000;
+		List<Integer> received = new ArrayList<>();
+		boolean[] completed = new boolean[1];
+		SyncBatchSubscriber<Integer> subscriber = new SyncBatchSubscriber<>(factory, 4, 4,
+				received::addAll, () -> completed[0] = true, (ex) -> {});
+		subscriber.onSubscribe(new Flow.Subscription() {
+
+			private int sent;
+
+			@Override
+			public void request(long n) {
+				// Signals on the calling thread, which is the primary thread during drains
+				for (long i = 0; i < n && sent < total; i++) {
+					subscriber.onNext(sent++);
+				}
+				if (sent == total && !completed[0]) {
+					subscriber.onComplete();
+				}
+			}
+
+			@Override
+			public void cancel() {}
+		});
+		// Further drains were queued rather than run recursively
+		assertTrue(received.size() < total, () -> "Received " + received.size());
+		int drains = 0;
+		while (!completed[0]) {
+			taskQueue.pollAndRunAll();
+			assertTrue(++drains <= total, "No progress");
+		}
+		assertEquals(total, received.size());
+		for (int n = 0; n < total; n++) {
+			assertEquals(n, received.get(n));
+		}
+	}
+
+	@Test
+	public void drainAfterConsumerError() {
+		TaskQueue taskQueue = new SimpleTaskQueue();
+		DeadlockFreeFutureFactory factory = new CurrentThreadFactory(taskQueue);
+		Error failure = new Error("Expected");
+		List<String> received = new ArrayList<>();
+		SyncBatchSubscriber<String> subscriber = new SyncBatchSubscriber<>(factory, 4, 4, (batch) -> {
+			if (batch.contains("fail")) {
+				throw failure;
+			}
+			received.addAll(batch);
+		}, () -> {}, (ex) -> {});
+		subscriber.onSubscribe(new Flow.Subscription() {
+			@Override
+			public void request(long n) {}
+
+			@Override
+			public void cancel() {}
+		});
+		assertSame(failure, assertThrows(Error.class, () -> subscriber.onNext("fail")));
+		subscriber.onNext("item");
+		taskQueue.pollAndRunAll();
+		assertEquals(List.of("item"), received);
+	}
+
+	/**
+	 * Factory whose primary thread is the thread which created it, and whose task queue
+	 * is drained only when the test does so
+	 *
+	 */
+	private static final class CurrentThreadFactory extends DeadlockFreeFutureFactory {
+
+		private final Thread primaryThread = Thread.currentThread();
+
+		CurrentThreadFactory(TaskQueue taskQueue) {
+			super(taskQueue, new TargetedUnparkManagedWaitStrategy());
+		}
+
+		@Override
+		public boolean isPrimaryThread() {
+			return Thread.currentThread() == primaryThread;
+		}
+
+		@Override
+		public Thread getPrimaryThread() {
+			return primaryThread;
+		}
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import org.junit.jupiter.api.Test;
+import space.arim.managedwaits.TargetedUnparkManagedWaitStrategy.Waiter;
+
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TargetedUnparkManagedWaitStrategyTest {
+
+	@Test
+	public void signalIdleWaiterWithoutUnpark() {
+		Waiter node = new Waiter(Thread.currentThread());
+		assertFalse(node.signal());
+		assertFalse(node.beginPark(), "Signalled waiter must not park");
+		assertFalse(node.signal());
+	}
+
+	@Test
+	public void signalParkedWaiterUnparks() {
+		Waiter node = new Waiter(Thread.currentThread());
+		assertTrue(node.beginPark());
+		assertTrue(node.signal());
+		// The permit left by the unpark is consumed here, as by the park it was meant for
+		LockSupport.park(this);
+		node.endPark();
+		assertFalse(node.beginPark(), "Signalled waiter must not park");
+	}
+
+	@Test
+	public void noUnparkAfterParkReturned() {
+		Waiter node = new Waiter(Thread.currentThread());
+		assertTrue(node.beginPark());
+		// The park ends on its own, then a signal arrives before the waiter leaves the parked state
+		node.parkReturned();
+		assertFalse(node.signal(), "Unparking a returned park leaves a stray permit");
+		node.endPark();
+		assertFalse(node.beginPark(), "Signalled waiter must not park");
+	}
+
+	@Test
+	public void parkAgainAfterClearingPermit() {
+		Waiter node = new Waiter(Thread.currentThread());
+		assertFalse(node.signal());
+		node.clearPermit();
+		assertTrue(node.beginPark());
+		node.endPark();
+	}
+
+}
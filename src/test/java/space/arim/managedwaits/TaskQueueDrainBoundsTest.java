@@ -0,0 +1,103 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TaskQueueDrainBoundsTest {
+
+	public static Stream<Arguments> taskQueues() {
+		return Stream.<Supplier<TaskQueue>>of(
+				SimpleTaskQueue::new,
+				() -> new RingBufferTaskQueue(16, RingBufferTaskQueue.FullQueuePolicy.REJECT),
+				() -> new RingBufferTaskQueue(2, RingBufferTaskQueue.FullQueuePolicy.SPILL),
+				PriorityTaskQueue::new,
+				StripedTaskQueue::new,
+				() -> new StripedTaskQueue(4, StripedTaskQueue.Ordering.GLOBAL))
+				.map((supplier) -> Arguments.of(supplier.get()));
+	}
+
+	@ParameterizedTest
+	@MethodSource("taskQueues")
+	public void snapshotExcludesLaterTasks(TaskQueue taskQueue) {
+		List<Integer> ran = new ArrayList<>();
+		taskQueue.addTask(() -> {
+			ran.add(0);
+			taskQueue.addTask(() -> ran.add(2));
+		});
+		taskQueue.addTask(() -> ran.add(1));
+
+		assertTrue(taskQueue.pollAndRun(DrainBounds.snapshot()));
+		assertEquals(List.of(0, 1), ran);
+		taskQueue.pollAndRunAll();
+		assertEquals(List.of(0, 1, 2), ran);
+	}
+
+	@ParameterizedTest
+	@MethodSource("taskQueues")
+	public void timeBudgetCarriesOverRemainingTasks(TaskQueue taskQueue) {
+		List<Integer> ran = new ArrayList<>();
+		for (int n = 0; n < 5; n++) {
+			int value = n;
+			taskQueue.addTask(() -> {
+				ran.add(value);
+				sleep(5L);
+			});
+		}
+		assertFalse(taskQueue.pollAndRun(DrainBounds.of(1L, TimeUnit.MILLISECONDS, false)));
+		assertEquals(List.of(0), ran);
+
+		assertTrue(taskQueue.pollAndRun(DrainBounds.unbounded()));
+		assertEquals(List.of(0, 1, 2, 3, 4), ran);
+	}
+
+	@ParameterizedTest
+	@MethodSource("taskQueues")
+	public void unboundedRunsEverything(TaskQueue taskQueue) {
+		List<Integer> ran = new ArrayList<>();
+		taskQueue.addTask(() -> {
+			ran.add(0);
+			taskQueue.addTask(() -> ran.add(1));
+		});
+		assertTrue(taskQueue.pollAndRun(DrainBounds.unbounded()));
+		assertEquals(List.of(0, 1), ran);
+	}
+
+	private static void sleep(long millis) {
+		try {
+			TimeUnit.MILLISECONDS.sleep(millis);
+		} catch (InterruptedException ex) {
+			throw new AssertionError(ex);
+		}
+	}
+
+}
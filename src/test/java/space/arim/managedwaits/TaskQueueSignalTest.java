@@ -0,0 +1,61 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TaskQueueSignalTest {
+
+	@ParameterizedTest
+	@MethodSource("space.arim.managedwaits.TaskQueueDrainBoundsTest#taskQueues")
+	public void onlyFirstAddSignals(TaskQueue taskQueue) {
+		assertTrue(taskQueue.addTask(() -> {}));
+		assertTrue(taskQueue.addedToEmptyQueue());
+		assertTrue(taskQueue.addTask(() -> {}));
+		assertFalse(taskQueue.addedToEmptyQueue());
+		assertEquals(2, taskQueue.addTasks(List.of(() -> {}, () -> {})));
+		assertFalse(taskQueue.addedToEmptyQueue());
+
+		taskQueue.pollAndRunAll();
+		assertTrue(taskQueue.addTask(() -> {}));
+		assertTrue(taskQueue.addedToEmptyQueue());
+	}
+
+	@ParameterizedTest
+	@MethodSource("space.arim.managedwaits.TaskQueueDrainBoundsTest#taskQueues")
+	public void addDuringDrainSignals(TaskQueue taskQueue) {
+		boolean[] signalled = new boolean[1];
+		taskQueue.addTask(() -> {
+			taskQueue.addTask(() -> {});
+			signalled[0] = taskQueue.addedToEmptyQueue();
+		});
+		assertTrue(taskQueue.addedToEmptyQueue());
+		assertTrue(taskQueue.pollAndRun(DrainBounds.snapshot()));
+		assertTrue(signalled[0], "Task excluded from the drain must signal");
+	}
+
+}
@@ -0,0 +1,85 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TimingWheelTest {
+
+	private final TimingWheel wheel = new TimingWheel();
+
+	@Test
+	public void noTasks() {
+		assertEquals(Long.MAX_VALUE, wheel.nanosUntilNextTask());
+		wheel.runDueTasks();
+	}
+
+	@Test
+	public void beyondOneRevolution() {
+		List<String> ran = new ArrayList<>();
+		// The wheel spans 512 milliseconds
+		wheel.schedule(() -> ran.add("far"), TimeUnit.MILLISECONDS.toNanos(600L));
+		wheel.schedule(() -> ran.add("near"), TimeUnit.MILLISECONDS.toNanos(20L));
+		long untilNext = wheel.nanosUntilNextTask();
+		assertTrue(untilNext <= TimeUnit.MILLISECONDS.toNanos(21L), "Next task in " + untilNext + "ns");
+
+		runUntil(ran, 1);
+		assertEquals(List.of("near"), ran);
+		untilNext = wheel.nanosUntilNextTask();
+		assertTrue(untilNext > TimeUnit.MILLISECONDS.toNanos(500L), "Next task in " + untilNext + "ns");
+
+		runUntil(ran, 2);
+		assertEquals(List.of("near", "far"), ran);
+		assertEquals(Long.MAX_VALUE, wheel.nanosUntilNextTask());
+	}
+
+	private void runUntil(List<String> ran, int count) {
+		while (ran.size() < count) {
+			long untilNext = wheel.nanosUntilNextTask();
+			if (untilNext > 0L) {
+				LockSupport.parkNanos(untilNext);
+			}
+			wheel.runDueTasks();
+		}
+	}
+
+	@Test
+	public void cancelledTaskIsRemoved() {
+		ScheduledSyncTask task = wheel.schedule(() -> {
+			throw new AssertionError("Cancelled task ran");
+		}, TimeUnit.MILLISECONDS.toNanos(2L));
+		wheel.nanosUntilNextTask();
+		assertTrue(task.cancel());
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+		while (wheel.nanosUntilNextTask() != Long.MAX_VALUE) {
+			assertTrue(System.nanoTime() < deadline);
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1L));
+			wheel.runDueTasks();
+		}
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * managedwaits
+ * Copyright © 2021 Anand Beh
+ *
+ * managedwaits is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * managedwaits is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with managedwaits. If not, see <https://www.gnu.org/licenses/>
+ * and navigate to version 3 of the GNU General Public License.
+ */
+
+package space.arim.managedwaits;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs against the multi-release jar on Java 21, see the java21 profile
+ *
+ */
+public class VirtualThreadAwareManagedWaitStrategyTest {
+
+	private static final ThreadFactory VIRTUAL_THREAD_FACTORY = virtualThreadFactory();
+
+	private EventLoopFutureFactory factory;
+
+	private static ThreadFactory virtualThreadFactory() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+		} catch (NoSuchMethodException ex) {
+			// Before Java 21
+			return null;
+		} catch (ReflectiveOperationException ex) {
+			throw new ExceptionInInitializerError(ex);
+		}
+	}
+
+	@BeforeEach
+	public void setup() {
+		assumeTrue(VIRTUAL_THREAD_FACTORY != null, "Virtual threads require Java 21");
+		factory = new EventLoopFutureFactory(new SimpleTaskQueue(), new VirtualThreadAwareManagedWaitStrategy(),
+				VIRTUAL_THREAD_FACTORY);
+		factory.start();
+	}
+
+	@AfterEach
+	public void tearDown() throws InterruptedException {
+		if (factory != null) {
+			factory.close();
+			assertTrue(factory.awaitTermination(1L, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	public void detectVirtualPrimaryThread() {
+		assertTrue(VirtualThreads.isVirtual(factory.getPrimaryThread()), "Java 21 layer not in use");
+	}
+
+	@Test
+	public void signalledWaitsOnVirtualPrimaryThread() {
+		for (int n = 0; n < 100; n++) {
+			int value = n;
+			int result = factory.supplySync(() -> {
+				return factory.supplyAsync(() -> factory.supplySync(() -> value).join()).join();
+			}).orTimeout(5L, TimeUnit.SECONDS).join();
+			assertEquals(value, result);
+		}
+	}
+
+}